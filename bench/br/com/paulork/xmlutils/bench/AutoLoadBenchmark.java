@@ -0,0 +1,39 @@
+package br.com.paulork.xmlutils.bench;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+
+/**
+ * Custo de uma leitura com auto-leitura ativa em um arquivo de configuração
+ * que não muda, para cada {@link XMLUtils.ReloadPolicy}.
+ *
+ * Uso: {@code ant bench -Dbench.class=AutoLoadBenchmark -Dbench.args="100"},
+ * onde o argumento é o numero de notas do arquivo gerado.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class AutoLoadBenchmark {
+
+    private static final int READS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int notas = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        File file = File.createTempFile("autoload-bench", ".xml");
+        file.deleteOnExit();
+        BenchSupport.generateInvoices(file, notas * 340L);
+        System.out.println("Arquivo: " + BenchSupport.mb(file.length()) + ", " + READS + " leituras por medição");
+
+        for (XMLUtils.ReloadPolicy policy : XMLUtils.ReloadPolicy.values()) {
+            try (XMLUtils xml = new XMLUtils(file)) {
+                xml.setAutoLoadPolicy(policy);
+                xml.setAutoLoad(true);
+                BenchSupport.measure("ReloadPolicy." + policy, 1, 3, () -> {
+                    for (int i = 0; i < READS; i++) {
+                        xml.getValue("emitente");
+                    }
+                });
+            }
+        }
+    }
+
+}
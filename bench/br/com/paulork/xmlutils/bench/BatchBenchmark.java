@@ -0,0 +1,52 @@
+package br.com.paulork.xmlutils.bench;
+
+import br.com.paulork.xmlutils.ExtractionPlan;
+import br.com.paulork.xmlutils.XMLBatch;
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+/**
+ * Leitura de muitos arquivos pequenos: um "new XMLUtils(file)" por arquivo
+ * em sequência contra o {@link XMLBatch} com 1, 2, 4 e 8 threads.
+ *
+ * Uso: {@code ant bench -Dbench.class=BatchBenchmark -Dbench.args="20000"},
+ * onde o argumento é o numero de arquivos gerados.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class BatchBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int arquivos = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        File dir = Files.createTempDirectory("batch-bench").toFile();
+        for (int i = 0; i < arquivos; i++) {
+            File file = new File(dir, "nota" + i + ".xml");
+            file.deleteOnExit();
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+                w.write(BenchSupport.invoices(1).toString());
+            }
+        }
+        dir.deleteOnExit();
+        System.out.println(arquivos + " arquivos, " + Runtime.getRuntime().availableProcessors() + " CPUs");
+        final ExtractionPlan plan = new ExtractionPlan("emitente", "cnpj", "valor");
+
+        BenchSupport.measure("sequencial", 1, 3, () -> {
+            for (File file : dir.listFiles()) {
+                new XMLUtils(file).extractFirst(plan);
+            }
+        });
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            final int n = threads;
+            BenchSupport.measure("XMLBatch " + n + " threads", 1, 3, () -> {
+                try (XMLBatch batch = new XMLBatch(n)) {
+                    batch.process(dir, xml -> xml.extractFirst(plan), null);
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package br.com.paulork.xmlutils.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Utilitários comuns aos benchmarks: geração de XMLs de teste e medição de
+ * tempo e de memória alocada.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public final class BenchSupport {
+
+    private BenchSupport() {
+    }
+
+    /**
+     * Gera um XML de notas (lote de "invoices") com aproximadamente o tamanho
+     * informado.
+     *
+     * @param file Arquivo a ser gerado.
+     * @param targetBytes Tamanho aproximado do arquivo em bytes.
+     * @return Numero de notas geradas.
+     * @throws IOException
+     */
+    public static int generateInvoices(File file, long targetBytes) throws IOException {
+        int count = 0;
+        long written = 0;
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 64 * 1024)) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<lote>\n");
+            while (written < targetBytes) {
+                String invoice = invoice(count);
+                w.write(invoice);
+                written += invoice.length();
+                count++;
+            }
+            w.write("</lote>\n");
+        }
+        return count;
+    }
+
+    /**
+     * Gera o conteúdo de um lote de notas em memória.
+     *
+     * @param invoices Numero de notas.
+     * @return XML do lote.
+     */
+    public static StringBuilder invoices(int invoices) {
+        StringBuilder sb = new StringBuilder("<lote>\n");
+        for (int i = 0; i < invoices; i++) {
+            sb.append(invoice(i));
+        }
+        return sb.append("</lote>\n");
+    }
+
+    private static String invoice(int i) {
+        return "  <nota numero=\"" + i + "\" serie=\"1\">\n"
+                + "    <emitente>Empresa " + (i % 97) + " Ltda</emitente>\n"
+                + "    <cnpj>" + (10000000000000L + i) + "</cnpj>\n"
+                + "    <emissao>2014-01-" + (10 + i % 18) + "</emissao>\n"
+                + "    <item codigo=\"" + (i % 1000) + "\">\n"
+                + "      <descricao>Produto de teste numero " + i + "</descricao>\n"
+                + "      <quantidade>" + (1 + i % 7) + "</quantidade>\n"
+                + "      <valor>" + (i % 500) + ".90</valor>\n"
+                + "    </item>\n"
+                + "    <obs><![CDATA[Observação da nota " + i + "]]></obs>\n"
+                + "  </nota>\n";
+    }
+
+    /**
+     * Bytes alocados pela thread corrente desde o inicio da JVM. Retorna -1
+     * caso a JVM não suporte a medição.
+     */
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Memória do heap em uso após forçar a coleta de lixo.
+     */
+    public static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Zera o pico de uso registrado pelos pools de memória do heap.
+     */
+    public static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Soma dos picos de uso dos pools de memória do heap desde o ultimo
+     * {@link #resetPeakHeap()}.
+     */
+    public static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    public static String mb(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Executa a tarefa algumas vezes para aquecimento e depois mede o melhor
+     * tempo e a memória alocada na melhor execução.
+     *
+     * @param name Nome exibido no relatório.
+     * @param warmup Numero de execuções de aquecimento.
+     * @param runs Numero de execuções medidas.
+     * @param task Tarefa a ser medida.
+     * @throws Exception
+     */
+    public static void measure(String name, int warmup, int runs, Task task) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            task.run();
+        }
+        long best = Long.MAX_VALUE;
+        long alloc = 0;
+        long peak = 0;
+        for (int i = 0; i < runs; i++) {
+            usedHeap();
+            resetPeakHeap();
+            long a0 = allocatedBytes();
+            long t0 = System.nanoTime();
+            task.run();
+            long elapsed = System.nanoTime() - t0;
+            long a1 = allocatedBytes();
+            if (elapsed < best) {
+                best = elapsed;
+                alloc = a1 - a0;
+            }
+            peak = Math.max(peak, peakHeap());
+        }
+        System.out.println(String.format("%-32s %10.2f ms   alocado: %12s   pico do heap: %12s",
+                name, best / 1e6, mb(alloc), mb(peak)));
+    }
+
+    public interface Task {
+
+        void run() throws Exception;
+    }
+
+}
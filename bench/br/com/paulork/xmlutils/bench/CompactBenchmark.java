@@ -0,0 +1,47 @@
+package br.com.paulork.xmlutils.bench;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+
+/**
+ * Memória ocupada por um XML mantido em memória com cada
+ * {@link XMLUtils.Storage}, e o tempo das consultas sobre ele. O DOM é
+ * medido depois de lido por completo (getValue da raiz), pois o parser do JDK
+ * só cria os nós quando são acessados.
+ *
+ * Uso: {@code ant bench -Dbench.class=CompactBenchmark -Dbench.args="5"},
+ * onde o argumento é o tamanho do arquivo gerado em MB.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class CompactBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        File file = File.createTempFile("compact-bench", ".xml");
+        file.deleteOnExit();
+        int notas = BenchSupport.generateInvoices(file, sizeMb * 1024L * 1024L);
+        System.out.println("Arquivo: " + BenchSupport.mb(file.length()) + " (" + notas + " notas)");
+
+        for (XMLUtils.Storage storage : XMLUtils.Storage.values()) {
+            long before = BenchSupport.usedHeap();
+            XMLUtils xml = new XMLUtils(file, XMLUtils.LoadMode.STREAM, storage);
+            xml.getValue("lote");
+            long retained = BenchSupport.usedHeap() - before;
+            System.out.println(String.format("%-32s heap retido: %12s (%.1fx o arquivo)",
+                    "Storage." + storage, BenchSupport.mb(retained), (double) retained / file.length()));
+            BenchSupport.measure("  getValues(\"cnpj\")", 2, 5, () -> xml.getValues("cnpj"));
+            BenchSupport.measure("  getMapChilds(\"item\") x 100", 2, 5, () -> {
+                for (int i = 0; i < 100; i++) {
+                    xml.getMapChilds("item");
+                }
+            });
+            BenchSupport.measure("  getNumOccur(\"nota\") x 10", 2, 5, () -> {
+                for (int i = 0; i < 10; i++) {
+                    xml.getNumOccur("nota");
+                }
+            });
+        }
+    }
+
+}
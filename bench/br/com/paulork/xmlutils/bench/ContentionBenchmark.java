@@ -0,0 +1,110 @@
+package br.com.paulork.xmlutils.bench;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Vazão (operações por segundo) de várias threads lendo e alterando um lote
+ * de notas: uma instância compartilhada com acesso sincronizado, uma
+ * instância compartilhada no modo concorrente e uma instância por thread
+ * (cópia do XML, como é feito hoje para evitar a corrupção do DOM).
+ *
+ * Cada thread faz getValue/getValues e, a cada "1/escritas" operações, um
+ * setValue.
+ *
+ * Uso: {@code ant bench -Dbench.class=ContentionBenchmark -Dbench.args="2000 20"},
+ * onde os argumentos são o numero de notas e a proporção de escritas (uma a
+ * cada N operações).
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class ContentionBenchmark {
+
+    private static final long DURATION_MS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int notas = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int writeEvery = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        StringBuilder lote = BenchSupport.invoices(notas);
+        System.out.println("Lote: " + notas + " notas, uma escrita a cada " + writeEvery + " operações, "
+                + Runtime.getRuntime().availableProcessors() + " CPUs");
+
+        int max = Math.max(8, Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= max; threads *= 2) {
+            // Todas com o índice de tags, para comparar apenas o acesso
+            XMLUtils shared = new XMLUtils(lote);
+            shared.setIndexed(true);
+            report("synchronized", threads, run(threads, writeEvery, i -> shared, true));
+
+            XMLUtils concurrent = new XMLUtils(lote);
+            concurrent.setConcurrent(true);
+            report("setConcurrent(true)", threads, run(threads, writeEvery, i -> concurrent, false));
+
+            XMLUtils[] copies = new XMLUtils[threads];
+            for (int i = 0; i < threads; i++) {
+                copies[i] = new XMLUtils(lote);
+                copies[i].setIndexed(true);
+            }
+            report("cópia por thread", threads, run(threads, writeEvery, i -> copies[i], false));
+        }
+    }
+
+    private static void report(String name, int threads, double opsPerSec) {
+        System.out.println(String.format("%-24s %2d threads %14.0f ops/s", name, threads, opsPerSec));
+    }
+
+    private static double run(int threads, int writeEvery, Instance instance, boolean lock) throws Exception {
+        LongAdder ops = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean(false);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            XMLUtils xml = instance.get(t);
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    long n = 0;
+                    while (!stop.get()) {
+                        if (lock) {
+                            synchronized (xml) {
+                                operation(xml, n, writeEvery);
+                            }
+                        } else {
+                            operation(xml, n, writeEvery);
+                        }
+                        n++;
+                    }
+                    ops.add(n);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        Thread.sleep(DURATION_MS);
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ops.sum() * 1000.0 / DURATION_MS;
+    }
+
+    private static void operation(XMLUtils xml, long n, int writeEvery) throws Exception {
+        if (n % writeEvery == 0) {
+            xml.setValue("emitente", "Empresa " + n);
+        } else if (n % 2 == 0) {
+            xml.getValue("cnpj");
+        } else {
+            xml.getValues("quantidade");
+        }
+    }
+
+    private interface Instance {
+
+        XMLUtils get(int thread);
+    }
+
+}
@@ -0,0 +1,51 @@
+package br.com.paulork.xmlutils.bench;
+
+import br.com.paulork.xmlutils.ExtractionPlan;
+import br.com.paulork.xmlutils.XMLUtils;
+
+/**
+ * Preenchimento de um "DTO" com N campos de um documento: N chamadas de
+ * getValue (uma busca pela árvore inteira por campo) contra um único
+ * extractFirst com um {@link ExtractionPlan} criado uma única vez.
+ *
+ * Uso: {@code ant bench -Dbench.class=ExtractBenchmark -Dbench.args="60 2000"},
+ * onde os argumentos são o numero de campos e o numero de documentos lidos.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class ExtractBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int campos = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int docs = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        StringBuilder sb = new StringBuilder("<documento>\n");
+        String[] tags = new String[campos];
+        for (int i = 0; i < campos; i++) {
+            tags[i] = "campo" + i;
+            // Agrupa os campos em blocos, como em um layout real
+            if (i % 10 == 0) {
+                sb.append(i == 0 ? "" : "  </bloco>\n").append("  <bloco>\n");
+            }
+            sb.append("    <").append(tags[i]).append(">valor ").append(i).append("</").append(tags[i]).append(">\n");
+        }
+        sb.append("  </bloco>\n</documento>");
+        XMLUtils xml = new XMLUtils(sb);
+        ExtractionPlan plan = new ExtractionPlan(tags);
+        System.out.println(campos + " campos, " + docs + " documentos");
+
+        BenchSupport.measure("getValue por campo", 1, 3, () -> {
+            for (int d = 0; d < docs; d++) {
+                for (String tag : tags) {
+                    xml.getValue(tag);
+                }
+            }
+        });
+        BenchSupport.measure("extractFirst(plano)", 1, 3, () -> {
+            for (int d = 0; d < docs; d++) {
+                xml.extractFirst(plan);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,51 @@
+package br.com.paulork.xmlutils.bench;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * Compara a leitura antiga (linha a linha para um StringBuilder e depois
+ * parse de uma String) com os modos de leitura {@link XMLUtils.LoadMode}.
+ *
+ * Uso: {@code ant bench -Dbench.class=LoadBenchmark -Dbench.args="50"}, onde
+ * o argumento é o tamanho do arquivo gerado em MB.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class LoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        File file = File.createTempFile("load-bench", ".xml");
+        file.deleteOnExit();
+        int notas = BenchSupport.generateInvoices(file, sizeMb * 1024L * 1024L);
+        System.out.println("Arquivo: " + BenchSupport.mb(file.length()) + " (" + notas + " notas)");
+
+        BenchSupport.measure("readLine + StringReader (antigo)", 1, 3, () -> legacyRead(file));
+        BenchSupport.measure("LoadMode.STREAM", 1, 3, () -> new XMLUtils(file, XMLUtils.LoadMode.STREAM));
+        BenchSupport.measure("LoadMode.MAPPED", 1, 3, () -> new XMLUtils(file, XMLUtils.LoadMode.MAPPED));
+    }
+
+    /**
+     * Reprodução do caminho de leitura anterior do XMLUtils.
+     */
+    private static Document legacyRead(File file) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            String str;
+            while ((str = reader.readLine()) != null) {
+                sb.append(str);
+            }
+        }
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new InputSource(new StringReader(sb.toString())));
+    }
+
+}
@@ -0,0 +1,36 @@
+package br.com.paulork.xmlutils.bench;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+
+/**
+ * Latência do "save()" sem releitura (padrão), da gravação atômica e da
+ * gravação com a verificação ativa, que equivale ao comportamento anterior
+ * (gravar e fazer o parse novamente).
+ *
+ * Uso: {@code ant bench -Dbench.class=SaveBenchmark -Dbench.args="20"}, onde
+ * o argumento é o tamanho do arquivo gerado em MB.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class SaveBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        File file = File.createTempFile("save-bench", ".xml");
+        file.deleteOnExit();
+        BenchSupport.generateInvoices(file, sizeMb * 1024L * 1024L);
+        System.out.println("Arquivo: " + BenchSupport.mb(file.length()));
+
+        XMLUtils xml = new XMLUtils(file);
+        BenchSupport.measure("save()", 1, 3, xml::save);
+        xml.setAtomicSave(true, XMLUtils.FsyncPolicy.NONE);
+        BenchSupport.measure("save() atômico sem fsync", 1, 3, xml::save);
+        xml.setAtomicSave(true, XMLUtils.FsyncPolicy.FILE_AND_DIRECTORY);
+        BenchSupport.measure("save() atômico com fsync", 1, 3, xml::save);
+        xml.setAtomicSave(false);
+        xml.setVerifyOnSave(true);
+        BenchSupport.measure("save() + releitura (antigo)", 1, 3, xml::save);
+    }
+
+}
@@ -0,0 +1,56 @@
+package br.com.paulork.xmlutils.bench;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import org.w3c.dom.Document;
+
+/**
+ * Memória e tempo para gravar um Document em arquivo montando a String
+ * completa (docToStr, caminho anterior do "save") e serializando direto para
+ * um OutputStream ou FileChannel (docToStream).
+ *
+ * Uso: {@code ant bench -Dbench.class=SerializeBenchmark -Dbench.args="50"},
+ * onde o argumento é o tamanho do arquivo gerado em MB.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class SerializeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        File file = File.createTempFile("serialize-bench", ".xml");
+        file.deleteOnExit();
+        BenchSupport.generateInvoices(file, sizeMb * 1024L * 1024L);
+        System.out.println("Arquivo: " + BenchSupport.mb(file.length()));
+
+        XMLUtils xml = new XMLUtils(file);
+        Document doc = xml.getDocument();
+        File out = File.createTempFile("serialize-bench", ".out");
+        out.deleteOnExit();
+
+        BenchSupport.measure("docToStr + Writer (antigo)", 1, 3, () -> {
+            String str = xml.docToStr(doc);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), "UTF-8"))) {
+                writer.write(str);
+            }
+        });
+        BenchSupport.measure("docToStream(OutputStream)", 1, 3, () -> {
+            try (OutputStream stream = new FileOutputStream(out)) {
+                xml.docToStream(doc, stream, true, true);
+            }
+        });
+        BenchSupport.measure("docToStream(FileChannel)", 1, 3, () -> {
+            try (FileChannel channel = FileChannel.open(out.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                xml.docToStream(doc, channel, true, true);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,42 @@
+package br.com.paulork.xmlutils.bench;
+
+import br.com.paulork.xmlutils.XMLFactories;
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.StringReader;
+import java.io.StringWriter;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * Divide um lote em um Document por nota: serializando e fazendo o parse de
+ * cada nota (caminho anterior do "getSubDocument"), copiando as sub-árvores
+ * (getSubDocuments) e movendo-as (detachSubDocuments).
+ *
+ * Uso: {@code ant bench -Dbench.class=SubDocumentBenchmark -Dbench.args="10000"},
+ * onde o argumento é o numero de notas do lote.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class SubDocumentBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int notas = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        StringBuilder lote = BenchSupport.invoices(notas);
+        System.out.println("Lote: " + notas + " notas");
+
+        XMLUtils xml = new XMLUtils(lote);
+        BenchSupport.measure("transform + parse (antigo)", 1, 3, () -> {
+            NodeList list = xml.getDocument().getElementsByTagName("nota");
+            for (int i = 0; i < list.getLength(); i++) {
+                StringWriter sw = new StringWriter();
+                XMLFactories.transformer().transform(new DOMSource(list.item(i)), new StreamResult(sw));
+                XMLFactories.documentBuilder().parse(new InputSource(new StringReader(sw.toString())));
+            }
+        });
+        BenchSupport.measure("getSubDocuments", 1, 3, () -> xml.getSubDocuments("nota"));
+        BenchSupport.measure("detachSubDocuments", 0, 1, () -> xml.detachSubDocuments("nota"));
+    }
+
+}
@@ -0,0 +1,118 @@
+package br.com.paulork.xmlutils.jmh;
+
+import br.com.paulork.xmlutils.bind.XMLAttribute;
+import br.com.paulork.xmlutils.bind.XMLBinder;
+import br.com.paulork.xmlutils.bind.XMLTag;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Conversão de todas as notas do documento em objetos: com o
+ * {@link XMLBinder} contra o código manual usual, que monta um HashMap de
+ * tags e outro de atributos por nota (como getMapChilds/getMapAttributes) e
+ * converte cada String.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BindBenchmark {
+
+    public static class Item {
+
+        @XMLAttribute
+        int codigo;
+        @XMLTag
+        String descricao;
+        @XMLTag
+        int quantidade;
+        @XMLTag
+        BigDecimal valor;
+    }
+
+    public static class Nota {
+
+        @XMLAttribute
+        int numero;
+        @XMLAttribute
+        int serie;
+        @XMLTag
+        String emitente;
+        @XMLTag
+        long cnpj;
+        @XMLTag
+        String emissao;
+        @XMLTag
+        Item item;
+    }
+
+    @Benchmark
+    public List<Nota> binder(Documents docs) {
+        return XMLBinder.of(Nota.class).bindAll(docs.xml, "nota");
+    }
+
+    @Benchmark
+    public List<Nota> manual(Documents docs) {
+        NodeList nodes = docs.xml.getDocument().getElementsByTagName("nota");
+        List<Nota> notas = new ArrayList<Nota>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element e = (Element) nodes.item(i);
+            HashMap<String, String> attrs = attributes(e);
+            HashMap<String, String> childs = childs(e);
+            Nota nota = new Nota();
+            nota.numero = Integer.parseInt(attrs.get("numero"));
+            nota.serie = Integer.parseInt(attrs.get("serie"));
+            nota.emitente = childs.get("emitente");
+            nota.cnpj = Long.parseLong(childs.get("cnpj").trim());
+            nota.emissao = childs.get("emissao");
+            Element itemNode = (Element) e.getElementsByTagName("item").item(0);
+            HashMap<String, String> itemAttrs = attributes(itemNode);
+            HashMap<String, String> itemChilds = childs(itemNode);
+            Item item = new Item();
+            item.codigo = Integer.parseInt(itemAttrs.get("codigo"));
+            item.descricao = itemChilds.get("descricao");
+            item.quantidade = Integer.parseInt(itemChilds.get("quantidade").trim());
+            item.valor = new BigDecimal(itemChilds.get("valor").trim());
+            nota.item = item;
+            notas.add(nota);
+        }
+        return notas;
+    }
+
+    private static HashMap<String, String> attributes(Element e) {
+        HashMap<String, String> map = new HashMap<String, String>();
+        NamedNodeMap attrs = e.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            map.put(attrs.item(i).getNodeName(), attrs.item(i).getNodeValue());
+        }
+        return map;
+    }
+
+    private static HashMap<String, String> childs(Element e) {
+        HashMap<String, String> map = new HashMap<String, String>();
+        for (Node child = e.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                map.put(child.getNodeName(), child.getTextContent());
+            }
+        }
+        return map;
+    }
+
+}
@@ -0,0 +1,65 @@
+package br.com.paulork.xmlutils.jmh;
+
+import br.com.paulork.xmlutils.DocumentCache;
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Aberturas repetidas do mesmo arquivo (configurações, modelos): "new
+ * XMLUtils(file)" faz a leitura e o parse a cada vez, enquanto
+ * {@link XMLUtils#cached(File)} apenas copia o documento guardado. Os
+ * tamanhos ficam abaixo do limite do cache padrão.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CacheBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Source {
+
+        @Param({"1KB", "100KB", "1MB"})
+        public String size;
+
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            file = JmhSupport.file(size);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            DocumentCache.getDefault().invalidate(file);
+        }
+    }
+
+    @Benchmark
+    public String parse(Source source) throws Exception {
+        return new XMLUtils(source.file).getValue("cnpj");
+    }
+
+    @Benchmark
+    public String cached(Source source) throws Exception {
+        return XMLUtils.cached(source.file).getValue("cnpj");
+    }
+
+}
@@ -0,0 +1,67 @@
+package br.com.paulork.xmlutils.jmh;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Criação do XMLUtils a partir de um File, do caminho (String) e de um
+ * StringBuilder com o conteúdo.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ConstructionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Sources {
+
+        @Param({"1KB", "1MB", "50MB"})
+        public String size;
+
+        File file;
+        String path;
+        StringBuilder content;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            file = JmhSupport.file(size);
+            path = file.getPath();
+            content = new StringBuilder(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public XMLUtils file(Sources sources) {
+        return new XMLUtils(sources.file);
+    }
+
+    @Benchmark
+    public XMLUtils path(Sources sources) {
+        return new XMLUtils(sources.path);
+    }
+
+    @Benchmark
+    public XMLUtils stringBuilder(Sources sources) throws Exception {
+        return new XMLUtils(sources.content);
+    }
+
+}
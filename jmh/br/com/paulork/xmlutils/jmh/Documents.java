@@ -0,0 +1,33 @@
+package br.com.paulork.xmlutils.jmh;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Documento lido uma vez por execução e compartilhado pelos benchmarks de
+ * leitura. Outros tamanhos podem ser informados na linha de comando (ex:
+ * {@code -p size=500MB}).
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@State(Scope.Benchmark)
+public class Documents {
+
+    @Param({"1KB", "1MB", "50MB"})
+    public String size;
+
+    public File file;
+    public XMLUtils xml;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = JmhSupport.file(size);
+        xml = new XMLUtils(file);
+    }
+
+}
@@ -0,0 +1,53 @@
+package br.com.paulork.xmlutils.jmh;
+
+import br.com.paulork.xmlutils.bench.BenchSupport;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Documentos usados pelos benchmarks JMH. Cada tamanho é gerado uma única vez
+ * no diretório temporário e reaproveitado pelas execuções seguintes (e pelos
+ * forks do JMH).
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public final class JmhSupport {
+
+    private JmhSupport() {
+    }
+
+    /**
+     * Retorna o XML de notas com o tamanho informado, gerando-o se
+     * necessário.
+     *
+     * @param size Tamanho no formato "1KB", "10MB", "1GB".
+     * @return Arquivo gerado.
+     * @throws IOException
+     */
+    public static synchronized File file(String size) throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "xmlutils-jmh-" + size + ".xml");
+        long bytes = bytes(size);
+        // Arquivo incompleto de uma execução interrompida
+        if (!file.exists() || file.length() < bytes) {
+            BenchSupport.generateInvoices(file, bytes);
+        }
+        return file;
+    }
+
+    static long bytes(String size) {
+        String s = size.trim().toUpperCase();
+        long unit = 1;
+        if (s.endsWith("KB")) {
+            unit = 1024L;
+        } else if (s.endsWith("MB")) {
+            unit = 1024L * 1024L;
+        } else if (s.endsWith("GB")) {
+            unit = 1024L * 1024L * 1024L;
+        }
+        if (unit > 1) {
+            s = s.substring(0, s.length() - 2);
+        }
+        return Long.parseLong(s.trim()) * unit;
+    }
+
+}
@@ -0,0 +1,79 @@
+package br.com.paulork.xmlutils.jmh;
+
+import br.com.paulork.xmlutils.XMLPatcher;
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Alteração de alguns valores de um arquivo: leitura em DOM,
+ * setValues/setCDATA e "save()" contra o {@link XMLPatcher}, que aplica as
+ * mesmas alterações em uma única passagem StAX. As duas formas gravam o
+ * resultado em outro arquivo, sem alterar o documento de origem.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PatchBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Source {
+
+        @Param({"1KB", "1MB", "50MB"})
+        public String size;
+
+        File file;
+        File output;
+        int notas;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            file = JmhSupport.file(size);
+            output = File.createTempFile("xmlutils-jmh-patch", ".xml");
+            notas = new XMLUtils(file).getNumOccur("nota");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            output.delete();
+        }
+    }
+
+    @Benchmark
+    public void dom(Source source) throws Exception {
+        XMLUtils xml = new XMLUtils(source.file);
+        xml.setValues("cnpj", "00000000000000", 0);
+        xml.setValues("cnpj", "00000000000000", source.notas / 2);
+        xml.setValues("emitente", "Empresa alterada", source.notas - 1);
+        xml.setCDATA("obs", "Observação alterada");
+        xml.save(source.output);
+    }
+
+    @Benchmark
+    public void patcher(Source source) throws Exception {
+        new XMLPatcher()
+                .setValue("cnpj", 0, "00000000000000")
+                .setValue("cnpj", source.notas / 2, "00000000000000")
+                .setValue("emitente", source.notas - 1, "Empresa alterada")
+                .setCDATA("obs", "Observação alterada")
+                .apply(source.file, source.output);
+    }
+
+}
@@ -0,0 +1,65 @@
+package br.com.paulork.xmlutils.jmh;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+
+/**
+ * Leituras sobre um documento já carregado. O numero de ocorrências de cada
+ * tag cresce com o tamanho do documento (de 3 notas em 1 KB a cerca de 1,2
+ * milhão em 500 MB); "getValue" de uma tag inexistente é o pior caso, pois
+ * percorre a árvore inteira.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ReadBenchmark {
+
+    @Benchmark
+    public String getValue(Documents docs) {
+        return docs.xml.getValue("cnpj");
+    }
+
+    @Benchmark
+    public String getValue_Missing(Documents docs) {
+        return docs.xml.getValue("inexistente");
+    }
+
+    @Benchmark
+    public String[] getValues(Documents docs) throws Exception {
+        return docs.xml.getValues("cnpj");
+    }
+
+    @Benchmark
+    public HashMap<String, String> getMapChilds(Documents docs) throws Exception {
+        return docs.xml.getMapChilds("item");
+    }
+
+    @Benchmark
+    public void forEachChild(Documents docs, Blackhole bh) throws Exception {
+        docs.xml.forEachChild("item", (name, value) -> bh.consume(value));
+    }
+
+    @Benchmark
+    public String docToStr(Documents docs) {
+        return docs.xml.docToStr(docs.xml.getDocument());
+    }
+
+    @Benchmark
+    public Document getSubDocument(Documents docs) {
+        return docs.xml.getSubDocument("nota");
+    }
+
+}
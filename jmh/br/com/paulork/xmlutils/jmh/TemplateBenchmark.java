@@ -0,0 +1,86 @@
+package br.com.paulork.xmlutils.jmh;
+
+import br.com.paulork.xmlutils.XMLTemplate;
+import br.com.paulork.xmlutils.XMLUtils;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Geração de uma mensagem a partir de um modelo fixo: parse do modelo por
+ * mensagem com {@code new XMLUtils(StringBuilder)} e setValue por tag, contra
+ * a cópia de um {@link XMLTemplate} com slots já resolvidos.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TemplateBenchmark {
+
+    private static final String[] TAGS = {"numero", "serie", "emissao", "cnpj", "nome", "valor", "obs"};
+
+    @State(Scope.Thread)
+    public static class Model {
+
+        StringBuilder model;
+        XMLTemplate template;
+        int[] slots;
+        long value;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            model = new StringBuilder("<mensagem>\n  <cabecalho>\n");
+            for (int i = 0; i < 3; i++) {
+                model.append("    <").append(TAGS[i]).append("/>\n");
+            }
+            model.append("  </cabecalho>\n  <corpo>\n    <emitente>\n");
+            for (int i = 3; i < TAGS.length; i++) {
+                model.append("      <").append(TAGS[i]).append("/>\n");
+            }
+            // Conteúdo fixo, como em um layout real
+            for (int i = 0; i < 30; i++) {
+                model.append("      <fixo").append(i).append(">constante ").append(i).append("</fixo").append(i).append(">\n");
+            }
+            model.append("    </emitente>\n  </corpo>\n</mensagem>");
+            template = new XMLTemplate(model);
+            slots = new int[TAGS.length];
+            for (int i = 0; i < TAGS.length; i++) {
+                slots[i] = template.slot(TAGS[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public Document parse(Model model) throws Exception {
+        String value = "valor " + model.value++;
+        XMLUtils xml = new XMLUtils(model.model);
+        for (String tag : TAGS) {
+            xml.setValue(tag, value);
+        }
+        return xml.getDocument();
+    }
+
+    @Benchmark
+    public Document template(Model model) {
+        String value = "valor " + model.value++;
+        XMLTemplate.Instance msg = model.template.newInstance();
+        for (int slot : model.slots) {
+            msg.set(slot, value);
+        }
+        return msg.getDocument();
+    }
+
+}
@@ -0,0 +1,90 @@
+package br.com.paulork.xmlutils.jmh;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Alterações e gravação. Cada execução trabalha sobre uma cópia do
+ * documento; com a auto-gravação ativa cada "setValue" grava o arquivo
+ * inteiro.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class WriteBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Target {
+
+        @Param({"1KB", "1MB", "50MB"})
+        public String size;
+
+        @Param({"false", "true"})
+        public boolean autoFlush;
+
+        File copy;
+        XMLUtils xml;
+        long value;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            copy = File.createTempFile("xmlutils-jmh", ".xml");
+            Files.copy(JmhSupport.file(size).toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            xml = new XMLUtils(copy);
+            xml.setAutoFlush(autoFlush);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            xml.close();
+            copy.delete();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Output {
+
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            file = File.createTempFile("xmlutils-jmh-save", ".xml");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public void setValue(Target target) throws Exception {
+        target.xml.setValue("cnpj", String.valueOf(target.value++));
+    }
+
+    @Benchmark
+    public void save(Documents docs, Output output) throws Exception {
+        docs.xml.save(output.file);
+    }
+
+}
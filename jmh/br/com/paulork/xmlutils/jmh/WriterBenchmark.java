@@ -0,0 +1,77 @@
+package br.com.paulork.xmlutils.jmh;
+
+import br.com.paulork.xmlutils.XMLUtils;
+import br.com.paulork.xmlutils.XMLWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Geração de um documento com N tags: chamadas de createTag (busca da tag pai
+ * na árvore a cada chamada, DOM inteiro em memória e "save()" no final)
+ * contra o {@link XMLWriter}, que grava diretamente no arquivo. As duas
+ * formas gravam o mesmo arquivo e são medidas com as mesmas configurações.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class WriterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Output {
+
+        @Param({"1000", "20000", "80000"})
+        public int tags;
+
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            file = File.createTempFile("xmlutils-jmh-writer", ".xml");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public void createTag(Output output) throws Exception {
+        Files.write(output.file.toPath(), "<lote><itens/></lote>".getBytes(StandardCharsets.UTF_8));
+        XMLUtils xml = new XMLUtils(output.file);
+        for (int i = 0; i < output.tags; i++) {
+            xml.createTag("itens", "item", "valor " + i);
+        }
+        xml.save();
+    }
+
+    @Benchmark
+    public void xmlWriter(Output output) throws Exception {
+        try (XMLWriter w = XMLUtils.newWriter(output.file)) {
+            w.start("lote").start("itens");
+            for (int i = 0; i < output.tags; i++) {
+                w.element("item", "valor " + i);
+            }
+        }
+    }
+
+}
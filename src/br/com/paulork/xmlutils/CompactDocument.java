@@ -0,0 +1,527 @@
+package br.com.paulork.xmlutils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Representação compacta e somente leitura de um XML, usada pelo
+ * {@link XMLUtils} com {@link XMLUtils.Storage#COMPACT}. Em vez de um objeto
+ * por nó (como no DOM), cada elemento ocupa uma posição em alguns arrays de
+ * int, em ordem de documento:
+ * <ul>
+ * <li>o nome da tag, como índice em uma tabela de nomes ("intern");</li>
+ * <li>o fim da sub-árvore: os descendentes do elemento "e" são os elementos
+ * de "e + 1" até "end[e] - 1";</li>
+ * <li>o inicio e o fim do seu conteúdo texto e o inicio dos seus
+ * atributos.</li>
+ * </ul>
+ *
+ * Todo o texto do documento fica em um único buffer de chars, na ordem em
+ * que aparece no XML. Assim o conteúdo texto de um elemento (o mesmo de
+ * "getTextContent()") é um trecho contínuo do buffer, e a String só é criada
+ * quando o valor é lido. Opcionalmente o buffer fica fora do heap
+ * ({@link XMLUtils.Storage#COMPACT_DIRECT}).
+ *
+ * Comentários, instruções de processamento e DOCTYPE são descartados e
+ * seções CDATA viram texto comum. A instância é imutável e pode ser lida por
+ * várias threads sem sincronização.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+final class CompactDocument {
+
+    private static final int[] NONE = new int[0];
+
+    // Tabela de nomes (tags e atributos)
+    private final String[] names;
+    private final Map<String, Integer> ids;
+    // Por elemento
+    private final int count;
+    private final int[] name;
+    private final int[] end;
+    private final int[] textStart;
+    private final int[] textEnd;
+    // Atributos do elemento "e": de attrStart[e] até attrStart[e + 1] - 1
+    private final int[] attrStart;
+    // Por atributo; o valor vai de attrValue[a] até attrValue[a + 1]
+    private final int[] attrName;
+    private final int[] attrValue;
+    // Elementos de cada nome, em ordem de documento
+    private final int[][] byName;
+    private volatile int[] all;
+    // Texto e valores dos atributos (um dos dois)
+    private final char[] chars;
+    private final CharBuffer direct;
+
+    private CompactDocument(Builder b, boolean offHeap) {
+        this.names = Arrays.copyOf(b.names, b.ids.size());
+        this.ids = b.ids;
+        this.count = b.count;
+        this.name = Arrays.copyOf(b.name, count);
+        this.end = Arrays.copyOf(b.end, count);
+        this.textStart = Arrays.copyOf(b.textStart, count);
+        this.textEnd = Arrays.copyOf(b.textEnd, count);
+        this.attrStart = Arrays.copyOf(b.attrStart, count + 1);
+        this.attrStart[count] = b.attrs;
+        this.attrName = Arrays.copyOf(b.attrName, b.attrs);
+        // Os valores dos atributos ficam depois do texto no buffer final
+        this.attrValue = new int[b.attrs + 1];
+        for (int a = 0; a <= b.attrs; a++) {
+            attrValue[a] = b.text + (a < b.attrs ? b.attrValue[a] : b.values);
+        }
+        this.byName = new int[names.length][];
+        for (int n = 0; n < names.length; n++) {
+            byName[n] = b.byName[n] != null ? Arrays.copyOf(b.byName[n], b.byNameCount[n]) : NONE;
+        }
+        int length = b.text + b.values;
+        if (offHeap) {
+            this.chars = null;
+            this.direct = ByteBuffer.allocateDirect(length * 2).asCharBuffer();
+            direct.put(b.chars, 0, b.text).put(b.valueChars, 0, b.values);
+            direct.clear();
+        } else {
+            this.chars = Arrays.copyOf(b.chars, length);
+            System.arraycopy(b.valueChars, 0, chars, b.text, b.values);
+            this.direct = null;
+        }
+    }
+
+    /**
+     * Faz o parse do XML (StAX), sem criar a árvore DOM.
+     *
+     * @param source XML (InputStream e systemId).
+     * @param offHeap Se true o texto fica em um buffer fora do heap.
+     * @return O documento compacto.
+     * @throws SAXException Erro no parse do XML.
+     * @throws IOException
+     */
+    static CompactDocument parse(InputSource source, boolean offHeap) throws SAXException, IOException {
+        XMLStreamReader reader = null;
+        try {
+            // Com a codificação informada os bytes são decodificados aqui,
+            // mantendo o systemId para resolver DTDs e entidades relativas.
+            reader = source.getEncoding() != null
+                    ? XMLFactories.getXMLInputFactory().createXMLStreamReader(source.getSystemId(), new InputStreamReader(source.getByteStream(), source.getEncoding()))
+                    : XMLFactories.getXMLInputFactory().createXMLStreamReader(source.getSystemId(), source.getByteStream());
+            Builder b = new Builder();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        b.start(reader);
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        b.end();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        // Texto fora da raiz (só espaços) não pertence a
+                        // nenhum elemento
+                        if (b.depth > 0) {
+                            b.text(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (b.count == 0) {
+                throw new SAXException("O XML não possui elemento raiz.");
+            }
+            return new CompactDocument(b, offHeap);
+        } catch (XMLStreamException ex) {
+            throw new SAXException(ex.getMessage(), ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Numero de elementos do documento.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Retorna as ocorrências da tag em ordem de documento (a mesma ordem de
+     * "getElementsByTagName"; "*" retorna todos os elementos). O array não
+     * deve ser alterado.
+     *
+     * @param tag Nome da tag.
+     * @return Posições dos elementos.
+     */
+    int[] elements(String tag) {
+        if ("*".equals(tag)) {
+            int[] list = all;
+            if (list == null) {
+                list = new int[count];
+                for (int e = 0; e < count; e++) {
+                    list[e] = e;
+                }
+                all = list;
+            }
+            return list;
+        }
+        Integer id = ids.get(tag);
+        return id != null ? byName[id] : NONE;
+    }
+
+    /**
+     * Numero de ocorrências da tag.
+     *
+     * @param tag Nome da tag.
+     * @param excludeRoot Se true o elemento raiz não é contado.
+     */
+    int occurrences(String tag, boolean excludeRoot) {
+        int[] list = elements(tag);
+        return (excludeRoot && list.length > 0 && list[0] == 0) ? list.length - 1 : list.length;
+    }
+
+    /**
+     * Retorna a ocorrência "index" da tag.
+     *
+     * @throws IndexOutOfBoundsException Se a ocorrência não existir.
+     */
+    int element(String tag, int index) {
+        int[] list = elements(tag);
+        if (index < 0 || index >= list.length) {
+            throw new IndexOutOfBoundsException("Ocorrência [" + index + "] da tag [" + tag + "] não existe.");
+        }
+        return list[index];
+    }
+
+    String name(int e) {
+        return names[name[e]];
+    }
+
+    /**
+     * Fim da sub-árvore do elemento: os filhos de "e" são percorridos com
+     * {@code for (int c = e + 1; c < end(e); c = end(c))}.
+     */
+    int end(int e) {
+        return end[e];
+    }
+
+    /**
+     * Conteúdo texto do elemento, inclusive dos descendentes (como
+     * "getTextContent()").
+     */
+    String text(int e) {
+        return string(textStart[e], textEnd[e]);
+    }
+
+    int attributeCount(int e) {
+        return attrStart[e + 1] - attrStart[e];
+    }
+
+    String attributeName(int e, int i) {
+        return names[attrName[attrStart[e] + i]];
+    }
+
+    String attributeValue(int e, int i) {
+        int a = attrStart[e] + i;
+        return string(attrValue[a], attrValue[a + 1]);
+    }
+
+    /**
+     * Valor do atributo informado, ou null se o elemento não o possuir.
+     */
+    String attribute(int e, String attr) {
+        Integer id = ids.get(attr);
+        if (id != null) {
+            for (int a = attrStart[e]; a < attrStart[e + 1]; a++) {
+                if (attrName[a] == id) {
+                    return string(attrValue[a], attrValue[a + 1]);
+                }
+            }
+        }
+        return null;
+    }
+
+    private String string(int start, int stop) {
+        if (start == stop) {
+            return "";
+        }
+        if (chars != null) {
+            return new String(chars, start, stop - start);
+        }
+        CharBuffer buffer = direct.duplicate();
+        buffer.limit(stop).position(start);
+        return buffer.toString();
+    }
+
+    /**
+     * Extrai os valores do plano percorrendo os elementos em ordem de
+     * documento (mesma semântica do "extract" sobre o DOM).
+     */
+    void extract(ExtractionPlan plan, ExtractionPlan.Result result) {
+        ExtractionPlan.Matcher matcher = plan.matcher();
+        int[] open = new int[16];
+        int depth = 0;
+        for (int e = 0; e < count; e++) {
+            // Fecha os elementos cuja sub-árvore terminou
+            while (depth > 0 && open[depth - 1] <= e) {
+                depth--;
+                matcher.end();
+            }
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+            }
+            open[depth++] = end[e];
+            int[] matched = matcher.start(name(e));
+            if (matched != null) {
+                for (int k : matched) {
+                    if (result.wants(k)) {
+                        String attr = plan.attribute(k);
+                        if (attr == null) {
+                            result.add(k, text(e));
+                        } else {
+                            String value = attribute(e, attr);
+                            if (value != null) {
+                                result.add(k, value);
+                            }
+                        }
+                    }
+                }
+                if (result.done()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cria uma árvore DOM (cópia) com a sub-árvore do elemento. O texto
+     * entre os elementos filhos é recuperado pelas posições no buffer.
+     *
+     * @param e Elemento raiz do novo Document (0 para o documento inteiro).
+     * @return Novo Document.
+     */
+    Document toDocument(int e) {
+        Document document = XMLFactories.documentBuilder().newDocument();
+        Node[] nodes = new Node[16];
+        int[] open = new int[16];
+        // Fim do ultimo trecho de texto copiado para cada elemento aberto
+        int[] copied = new int[16];
+        int depth = 0;
+        for (int x = e; x <= end[e]; x++) {
+            while (depth > 0 && end[open[depth - 1]] <= x) {
+                depth--;
+                appendText(document, nodes[depth], copied[depth], textEnd[open[depth]]);
+            }
+            if (x == end[e]) {
+                break;
+            }
+            Element el = document.createElement(name(x));
+            for (int i = 0; i < attributeCount(x); i++) {
+                el.setAttribute(attributeName(x, i), attributeValue(x, i));
+            }
+            if (depth > 0) {
+                appendText(document, nodes[depth - 1], copied[depth - 1], textStart[x]);
+                copied[depth - 1] = textEnd[x];
+                nodes[depth - 1].appendChild(el);
+            } else {
+                document.appendChild(el);
+            }
+            if (depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+                open = Arrays.copyOf(open, depth * 2);
+                copied = Arrays.copyOf(copied, depth * 2);
+            }
+            nodes[depth] = el;
+            open[depth] = x;
+            copied[depth] = textStart[x];
+            depth++;
+        }
+        return document;
+    }
+
+    private void appendText(Document document, Node parent, int start, int stop) {
+        if (start < stop) {
+            parent.appendChild(document.createTextNode(string(start, stop)));
+        }
+    }
+
+    /**
+     * Acumula os arrays durante o parse.
+     */
+    private static final class Builder {
+
+        private String[] names = new String[64];
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+        private int[][] byName = new int[64][];
+        private int[] byNameCount = new int[64];
+
+        private int count = 0;
+        private int[] name = new int[256];
+        private int[] end = new int[256];
+        private int[] textStart = new int[256];
+        private int[] textEnd = new int[256];
+        private int[] attrStart = new int[257];
+
+        private int attrs = 0;
+        private int[] attrName = new int[64];
+        private int[] attrValue = new int[64];
+
+        private char[] chars = new char[4096];
+        private int text = 0;
+        private char[] valueChars = new char[1024];
+        private int values = 0;
+
+        // Elementos abertos
+        private int[] open = new int[16];
+        private int depth = 0;
+
+        void start(XMLStreamReader reader) {
+            if (count == name.length) {
+                int size = count * 2;
+                name = Arrays.copyOf(name, size);
+                end = Arrays.copyOf(end, size);
+                textStart = Arrays.copyOf(textStart, size);
+                textEnd = Arrays.copyOf(textEnd, size);
+                attrStart = Arrays.copyOf(attrStart, size + 1);
+            }
+            int e = count++;
+            int id = id(XMLStreamUtils.qualifiedName(reader));
+            name[e] = id;
+            textStart[e] = text;
+            attrStart[e] = attrs;
+            addElement(id, e);
+            // As declarações de namespace são atributos no DOM
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = reader.getNamespacePrefix(i);
+                String uri = reader.getNamespaceURI(i);
+                attribute(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, uri != null ? uri : "");
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String prefix = reader.getAttributePrefix(i);
+                String local = reader.getAttributeLocalName(i);
+                attribute(prefix == null || prefix.isEmpty() ? local : prefix + ":" + local, reader.getAttributeValue(i));
+            }
+            sortAttributes(attrStart[e], attrs);
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+            }
+            open[depth++] = e;
+        }
+
+        void end() {
+            int e = open[--depth];
+            end[e] = count;
+            textEnd[e] = text;
+        }
+
+        void text(char[] buffer, int start, int length) {
+            if (text + length > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, text + length));
+            }
+            System.arraycopy(buffer, start, chars, text, length);
+            text += length;
+        }
+
+        private void attribute(String qname, String value) {
+            if (attrs == attrName.length) {
+                attrName = Arrays.copyOf(attrName, attrs * 2);
+                attrValue = Arrays.copyOf(attrValue, attrs * 2);
+            }
+            attrName[attrs] = id(qname);
+            attrValue[attrs] = values;
+            attrs++;
+            int length = value.length();
+            if (values + length > valueChars.length) {
+                valueChars = Arrays.copyOf(valueChars, Math.max(valueChars.length * 2, values + length));
+            }
+            value.getChars(0, length, valueChars, values);
+            values += length;
+        }
+
+        /**
+         * Ordena os atributos do elemento pelo nome, como no NamedNodeMap do
+         * DOM. Os valores continuam no buffer; só os índices trocam de lugar
+         * (insertion sort: poucos atributos por elemento).
+         */
+        private void sortAttributes(int from, int to) {
+            int[] ends = null;
+            for (int i = from + 1; i < to; i++) {
+                if (names[attrName[i - 1]].compareTo(names[attrName[i]]) > 0) {
+                    ends = new int[to - from];
+                    break;
+                }
+            }
+            if (ends == null) {
+                return;
+            }
+            // Fim do valor de cada atributo, antes de trocar a ordem
+            for (int i = from; i < to; i++) {
+                ends[i - from] = i + 1 < to ? attrValue[i + 1] : values;
+            }
+            int[] starts = Arrays.copyOfRange(attrValue, from, to);
+            int[] ids = Arrays.copyOfRange(attrName, from, to);
+            Integer[] order = new Integer[to - from];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> names[ids[a]].compareTo(names[ids[b]]));
+            // Regrava os valores na nova ordem, para manter cada valor entre
+            // attrValue[a] e attrValue[a + 1]
+            char[] copy = Arrays.copyOfRange(valueChars, starts[0], values);
+            int base = starts[0];
+            int pos = base;
+            for (int i = 0; i < order.length; i++) {
+                int o = order[i];
+                int length = ends[o] - starts[o];
+                System.arraycopy(copy, starts[o] - base, valueChars, pos, length);
+                attrName[from + i] = ids[o];
+                attrValue[from + i] = pos;
+                pos += length;
+            }
+        }
+
+        private int id(String qname) {
+            Integer id = ids.get(qname);
+            if (id == null) {
+                id = ids.size();
+                if (id == names.length) {
+                    names = Arrays.copyOf(names, id * 2);
+                    byName = Arrays.copyOf(byName, id * 2);
+                    byNameCount = Arrays.copyOf(byNameCount, id * 2);
+                }
+                // Nomes compartilhados entre todos os documentos
+                names[id] = qname.intern();
+                ids.put(names[id], id);
+            }
+            return id;
+        }
+
+        private void addElement(int id, int e) {
+            int[] list = byName[id];
+            if (list == null) {
+                list = byName[id] = new int[4];
+            } else if (byNameCount[id] == list.length) {
+                list = byName[id] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[byNameCount[id]++] = e;
+        }
+    }
+
+}
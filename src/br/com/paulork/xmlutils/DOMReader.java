@@ -0,0 +1,309 @@
+package br.com.paulork.xmlutils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * XMLReader que percorre uma árvore DOM (uma única vez, sem recursão) e gera
+ * os eventos SAX correspondentes, ignorando os nós de texto formados apenas
+ * por espaços. Usado como origem ("SAXSource") na serialização, permite que o
+ * serializador faça a indentação sem que o Document original seja alterado.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+class DOMReader implements XMLReader {
+
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+    private static final String XMLNS = "xmlns";
+
+    private final Node root;
+    private ContentHandler contentHandler;
+    private LexicalHandler lexicalHandler;
+    private DTDHandler dtdHandler;
+    private EntityResolver entityResolver;
+    private ErrorHandler errorHandler;
+
+    // Prefixos declarados no escopo corrente ([prefixo, uri]) e o tamanho da
+    // lista na entrada de cada elemento aberto.
+    private final List<String[]> declared = new ArrayList<String[]>();
+    private final List<Integer> scopes = new ArrayList<Integer>();
+
+    /**
+     * @param root Nó inicial (Document ou Element).
+     */
+    DOMReader(Node root) {
+        this.root = root;
+    }
+
+    @Override
+    public void parse(InputSource input) throws IOException, SAXException {
+        contentHandler.startDocument();
+        Node node = root;
+        while (node != null) {
+            Node next = start(node) ? node.getFirstChild() : null;
+            if (next == null) {
+                // Sobe na árvore fechando os elementos até achar um irmão
+                while (true) {
+                    end(node);
+                    if (node == root) {
+                        node = null;
+                        break;
+                    }
+                    if (node.getNextSibling() != null) {
+                        node = node.getNextSibling();
+                        break;
+                    }
+                    node = node.getParentNode();
+                }
+            } else {
+                node = next;
+            }
+        }
+        contentHandler.endDocument();
+    }
+
+    @Override
+    public void parse(String systemId) throws IOException, SAXException {
+        parse(new InputSource(systemId));
+    }
+
+    /**
+     * Gera o evento de abertura do nó.
+     *
+     * @return true se os filhos do nó devem ser percorridos.
+     */
+    private boolean start(Node node) throws SAXException {
+        switch (node.getNodeType()) {
+            case Node.DOCUMENT_NODE:
+            case Node.DOCUMENT_FRAGMENT_NODE:
+            case Node.ENTITY_REFERENCE_NODE:
+                return true;
+            case Node.ELEMENT_NODE:
+                startElement((Element) node);
+                return true;
+            case Node.TEXT_NODE:
+                if (!isIgnorable(node)) {
+                    characters(node.getNodeValue());
+                }
+                return false;
+            case Node.CDATA_SECTION_NODE:
+                if (lexicalHandler != null) {
+                    lexicalHandler.startCDATA();
+                    characters(node.getNodeValue());
+                    lexicalHandler.endCDATA();
+                } else {
+                    characters(node.getNodeValue());
+                }
+                return false;
+            case Node.COMMENT_NODE:
+                if (lexicalHandler != null) {
+                    char[] chars = node.getNodeValue().toCharArray();
+                    lexicalHandler.comment(chars, 0, chars.length);
+                }
+                return false;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                contentHandler.processingInstruction(node.getNodeName(), node.getNodeValue());
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gera o evento de fechamento do nó (apenas para elementos).
+     */
+    private void end(Node node) throws SAXException {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            contentHandler.endElement(uri(node), localName(node), node.getNodeName());
+            int size = scopes.remove(scopes.size() - 1);
+            while (declared.size() > size) {
+                contentHandler.endPrefixMapping(declared.remove(declared.size() - 1)[0]);
+            }
+        }
+    }
+
+    private void startElement(Element element) throws SAXException {
+        int scope = declared.size();
+        scopes.add(scope);
+        AttributesImpl atts = new AttributesImpl();
+        NamedNodeMap attrs = element.getAttributes();
+        // Declarações de namespace primeiro, como na serialização do DOM
+        for (int i = 0; i < attrs.getLength(); i++) {
+            Attr attr = (Attr) attrs.item(i);
+            String name = attr.getName();
+            if (name.equals(XMLNS)) {
+                declare("", attr.getValue(), atts, name);
+            } else if (name.startsWith(XMLNS + ":")) {
+                declare(name.substring(XMLNS.length() + 1), attr.getValue(), atts, name);
+            }
+        }
+        // Elementos criados com createElementNS podem não ter a declaração
+        // do namespace como atributo.
+        String uri = element.getNamespaceURI();
+        if (uri != null && !uri.isEmpty()) {
+            String prefix = element.getPrefix() != null ? element.getPrefix() : "";
+            if (!uri.equals(lookup(prefix))) {
+                declare(prefix, uri, atts, prefix.isEmpty() ? XMLNS : XMLNS + ":" + prefix);
+            }
+        }
+        for (int i = 0; i < declared.size() - scope; i++) {
+            String[] decl = declared.get(scope + i);
+            contentHandler.startPrefixMapping(decl[0], decl[1]);
+        }
+        for (int i = 0; i < attrs.getLength(); i++) {
+            Attr attr = (Attr) attrs.item(i);
+            String name = attr.getName();
+            if (!name.equals(XMLNS) && !name.startsWith(XMLNS + ":")) {
+                atts.addAttribute(uri(attr), localName(attr), name, "CDATA", attr.getValue());
+            }
+        }
+        contentHandler.startElement(uri(element), localName(element), element.getNodeName(), atts);
+    }
+
+    private void declare(String prefix, String uri, AttributesImpl atts, String qName) {
+        declared.add(new String[]{prefix, uri});
+        atts.addAttribute("", "", qName, "CDATA", uri);
+    }
+
+    private String lookup(String prefix) {
+        for (int i = declared.size() - 1; i >= 0; i--) {
+            if (declared.get(i)[0].equals(prefix)) {
+                return declared.get(i)[1];
+            }
+        }
+        return null;
+    }
+
+    private void characters(String text) throws SAXException {
+        char[] chars = text.toCharArray();
+        contentHandler.characters(chars, 0, chars.length);
+    }
+
+    /**
+     * Indica se o nó de texto pode ser ignorado. Assim como no XPath
+     * ("//text()[normalize-space()='']"), nós de texto e CDATA adjacentes
+     * formam um único texto, que só é ignorado se for todo formado por
+     * espaços.
+     */
+    static boolean isIgnorable(Node text) {
+        for (Node n = text; n != null && isText(n); n = n.getPreviousSibling()) {
+            if (n.getNodeType() == Node.CDATA_SECTION_NODE || !isWhitespace(n.getNodeValue())) {
+                return false;
+            }
+        }
+        for (Node n = text.getNextSibling(); n != null && isText(n); n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.CDATA_SECTION_NODE || !isWhitespace(n.getNodeValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isText(Node node) {
+        return node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE;
+    }
+
+    /**
+     * Mesmo critério de "normalize-space() = ''" do XPath.
+     */
+    static boolean isWhitespace(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String uri(Node node) {
+        return node.getNamespaceURI() != null ? node.getNamespaceURI() : "";
+    }
+
+    private static String localName(Node node) {
+        return node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+    }
+
+    @Override
+    public boolean getFeature(String name) throws SAXNotRecognizedException {
+        throw new SAXNotRecognizedException(name);
+    }
+
+    @Override
+    public void setFeature(String name, boolean value) throws SAXNotRecognizedException {
+        throw new SAXNotRecognizedException(name);
+    }
+
+    @Override
+    public Object getProperty(String name) throws SAXNotRecognizedException {
+        if (LEXICAL_HANDLER.equals(name)) {
+            return lexicalHandler;
+        }
+        throw new SAXNotRecognizedException(name);
+    }
+
+    @Override
+    public void setProperty(String name, Object value) throws SAXNotRecognizedException {
+        if (LEXICAL_HANDLER.equals(name)) {
+            lexicalHandler = (LexicalHandler) value;
+        } else {
+            throw new SAXNotRecognizedException(name);
+        }
+    }
+
+    @Override
+    public void setEntityResolver(EntityResolver resolver) {
+        this.entityResolver = resolver;
+    }
+
+    @Override
+    public EntityResolver getEntityResolver() {
+        return entityResolver;
+    }
+
+    @Override
+    public void setDTDHandler(DTDHandler handler) {
+        this.dtdHandler = handler;
+    }
+
+    @Override
+    public DTDHandler getDTDHandler() {
+        return dtdHandler;
+    }
+
+    @Override
+    public void setContentHandler(ContentHandler handler) {
+        this.contentHandler = handler;
+    }
+
+    @Override
+    public ContentHandler getContentHandler() {
+        return contentHandler;
+    }
+
+    @Override
+    public void setErrorHandler(ErrorHandler handler) {
+        this.errorHandler = handler;
+    }
+
+    @Override
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+}
@@ -0,0 +1,225 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import org.w3c.dom.Document;
+
+/**
+ * Cache de documentos já lidos, compartilhado pelo processo, para arquivos
+ * abertos repetidamente (configurações, modelos). Cada entrada é identificada
+ * pelo caminho canônico do arquivo e validada pelo tamanho e pela data de
+ * modificação: um arquivo alterado no disco é lido novamente.
+ *
+ * O documento guardado nunca é entregue diretamente. Cada
+ * {@link #open(File)} recebe uma cópia (cloneNode) em um novo
+ * {@link XMLUtils}, que pode ser alterado e gravado normalmente sem afetar o
+ * cache nem as outras cópias.
+ *
+ * O tamanho do cache é limitado pela soma do tamanho dos arquivos em disco
+ * (a árvore DOM ocupa várias vezes esse valor). Ao ultrapassar o limite são
+ * descartadas as entradas usadas há mais tempo (LRU). Arquivos maiores que o
+ * limite não são guardados.
+ *
+ * <pre>{@code
+ * XMLUtils config = XMLUtils.cached(new File("config.xml"));
+ * System.out.println(DocumentCache.getDefault());
+ * }</pre>
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public final class DocumentCache {
+
+    // Limite do cache padrão, em bytes dos arquivos em disco
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final DocumentCache DEFAULT = new DocumentCache(DEFAULT_MAX_BYTES);
+
+    private final long maxBytes;
+    // Ordem de acesso: a primeira entrada é a usada há mais tempo
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Documento guardado e os metadados do arquivo quando foi lido.
+     */
+    private static final class Entry {
+
+        final Document document;
+        final FileStamp stamp;
+        final String charset;
+
+        Entry(Document document, FileStamp stamp, String charset) {
+            this.document = document;
+            this.stamp = stamp;
+            this.charset = charset;
+        }
+
+        /**
+         * Cópia do documento. A leitura da árvore pelo cloneNode não é
+         * segura entre threads no DOM do JDK, por isso é serializada.
+         */
+        synchronized Document copy() {
+            return (Document) document.cloneNode(true);
+        }
+    }
+
+    /**
+     * Cria um cache independente do cache padrão.
+     *
+     * @param maxBytes Soma máxima do tamanho dos arquivos guardados.
+     */
+    public DocumentCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new XMLException("O tamanho máximo do cache deve ser maior que zero.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return O cache compartilhado usado por {@link XMLUtils#cached(File)}.
+     */
+    public static DocumentCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Retorna um XMLUtils com uma cópia do documento do arquivo, lendo o
+     * arquivo apenas se ele não estiver no cache ou tiver mudado no disco.
+     *
+     * @param file Arquivo XML.
+     * @return XMLUtils ligado ao arquivo, com uma cópia própria do documento.
+     * @throws XMLException Se o arquivo não existir ou não puder ser lido.
+     */
+    public XMLUtils open(File file) {
+        if (file == null || !file.exists()) {
+            throw new XMLException("O arquivo \"" + (file != null ? file.getAbsolutePath() : null) + "\" não existe.");
+        }
+        String key;
+        FileStamp current;
+        try {
+            key = file.getCanonicalPath();
+            current = FileStamp.read(file);
+        } catch (IOException ex) {
+            throw new XMLException("Erro de leitura do arquivo XML.", ex);
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && !entry.stamp.sameMetadata(current)) {
+                remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (entry != null) {
+            return new XMLUtils(file, entry.copy(), entry.stamp, entry.charset);
+        }
+        // Leitura fora do lock, para não bloquear os outros arquivos
+        XMLUtils xml = new XMLUtils(file);
+        FileStamp stamp = xml.getStamp();
+        if (stamp != null && stamp.size <= maxBytes) {
+            put(key, new Entry((Document) xml.getDocument().cloneNode(true), stamp, xml.getCharset()));
+        }
+        return xml;
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.stamp.size;
+        }
+        bytes += entry.stamp.size;
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            bytes -= eldest.stamp.size;
+            evictions++;
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.stamp.size;
+        }
+    }
+
+    /**
+     * Remove o arquivo do cache.
+     *
+     * @param file Arquivo XML.
+     */
+    public void invalidate(File file) {
+        String key;
+        try {
+            key = file.getCanonicalPath();
+        } catch (IOException ex) {
+            key = file.getAbsolutePath();
+        }
+        synchronized (this) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Remove todas as entradas (as estatísticas são mantidas).
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return Soma do tamanho dos arquivos guardados.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Proporção de aberturas atendidas pelo cache (0 a 1).
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d arquivos, %.1f de %.1f MB, %d acertos, %d faltas (%.1f%%), %d descartes",
+                entries.size(), bytes / (1024.0 * 1024), maxBytes / (1024.0 * 1024), hits, misses,
+                getHitRate() * 100, evictions);
+    }
+
+}
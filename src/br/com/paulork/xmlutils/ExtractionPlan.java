@@ -0,0 +1,271 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plano de extração: conjunto de tags (ou caminhos) cujos valores devem ser
+ * extraídos de uma só vez, em uma única passagem pelo XML. O plano é
+ * imutável e pode ser criado uma única vez (ex: por layout de documento) e
+ * reutilizado por várias threads e instâncias de {@link XMLUtils} e
+ * {@link XMLStreamUtils}.
+ *
+ * Cada chave pode ser:
+ * <ul>
+ * <li>o nome de uma tag ("cnpj"), com a mesma semântica de
+ * {@link XMLUtils#getValue(String)};</li>
+ * <li>um caminho relativo ("nota/emitente"), que seleciona as tags
+ * "emitente" filhas de uma tag "nota" em qualquer nível;</li>
+ * <li>um caminho absoluto ("/lote/nota/cnpj"), a partir da raiz;</li>
+ * <li>qualquer uma das formas acima terminada por um atributo
+ * ("nota/@numero").</li>
+ * </ul>
+ *
+ * <pre>{@code
+ * static final ExtractionPlan NOTA = new ExtractionPlan("nota/@numero", "emitente", "cnpj", "item/valor");
+ * ...
+ * HashMap<String, String> valores = xml.extractFirst(NOTA);
+ * }</pre>
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public final class ExtractionPlan {
+
+    private final String[] keys;
+    // Tags de cada chave (sem o atributo)
+    private final String[][] paths;
+    private final boolean[] absolute;
+    private final String[] attributes;
+    // Chaves indexadas pelo nome da ultima tag do caminho
+    private final Map<String, int[]> byName = new HashMap<String, int[]>();
+
+    /**
+     * @param keys Tags ou caminhos a serem extraídos.
+     */
+    public ExtractionPlan(String... keys) {
+        if (keys == null || keys.length == 0) {
+            throw new XMLException("O plano de extração deve ter pelo menos uma tag.");
+        }
+        Set<String> unique = new LinkedHashSet<String>(Arrays.asList(keys));
+        this.keys = unique.toArray(new String[unique.size()]);
+        this.paths = new String[this.keys.length][];
+        this.absolute = new boolean[this.keys.length];
+        this.attributes = new String[this.keys.length];
+        for (int k = 0; k < this.keys.length; k++) {
+            parse(k, this.keys[k]);
+            String last = paths[k][paths[k].length - 1];
+            int[] ids = byName.get(last);
+            if (ids == null) {
+                ids = new int[]{k};
+            } else {
+                ids = Arrays.copyOf(ids, ids.length + 1);
+                ids[ids.length - 1] = k;
+            }
+            byName.put(last, ids);
+        }
+    }
+
+    private void parse(int k, String key) {
+        if (key == null || key.isEmpty()) {
+            throw new XMLException("Tag inválida no plano de extração: [" + key + "].");
+        }
+        String path = key;
+        if (path.startsWith("/")) {
+            absolute[k] = true;
+            path = path.substring(1);
+        }
+        String[] segments = path.split("/", -1);
+        int count = segments.length;
+        if (segments[count - 1].startsWith("@")) {
+            attributes[k] = segments[count - 1].substring(1);
+            count--;
+        }
+        if (count == 0 || (attributes[k] != null && attributes[k].isEmpty())) {
+            throw new XMLException("Tag inválida no plano de extração: [" + key + "].");
+        }
+        for (int i = 0; i < count; i++) {
+            if (segments[i].isEmpty() || segments[i].startsWith("@")) {
+                throw new XMLException("Tag inválida no plano de extração: [" + key + "].");
+            }
+        }
+        paths[k] = Arrays.copyOf(segments, count);
+    }
+
+    /**
+     * @return As chaves do plano, na ordem informada (sem repetições).
+     */
+    public String[] getKeys() {
+        return keys.clone();
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    String key(int k) {
+        return keys[k];
+    }
+
+    /**
+     * Nome do atributo extraído pela chave, ou null se o valor for o
+     * conteúdo da tag.
+     */
+    String attribute(int k) {
+        return attributes[k];
+    }
+
+    Matcher matcher() {
+        return new Matcher();
+    }
+
+    Result result(boolean firstOnly) {
+        return new Result(firstOnly);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(keys);
+    }
+
+    /**
+     * Acompanha a pilha de tags abertas durante uma leitura (DOM ou StAX) e
+     * informa quais chaves correspondem a cada tag. Uma instância por
+     * leitura.
+     */
+    final class Matcher {
+
+        private String[] stack = new String[16];
+        private int depth = 0;
+
+        /**
+         * Abertura de uma tag.
+         *
+         * @return As chaves que correspondem à tag, ou null.
+         */
+        int[] start(String name) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = name;
+            int[] candidates = byName.get(name);
+            if (candidates == null) {
+                return null;
+            }
+            int[] matched = null;
+            int count = 0;
+            for (int k : candidates) {
+                if (matches(k)) {
+                    if (matched == null) {
+                        matched = new int[candidates.length];
+                    }
+                    matched[count++] = k;
+                }
+            }
+            return (matched == null || count == matched.length) ? matched : Arrays.copyOf(matched, count);
+        }
+
+        /**
+         * Fechamento da tag aberta por ultimo.
+         */
+        void end() {
+            stack[--depth] = null;
+        }
+
+        private boolean matches(int k) {
+            String[] path = paths[k];
+            if (path.length > depth || (absolute[k] && path.length != depth)) {
+                return false;
+            }
+            // O ultimo nome já foi conferido pelo índice
+            for (int i = path.length - 2, j = depth - 2; i >= 0; i--, j--) {
+                if (!path[i].equals(stack[j])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Valores extraídos por chave, em ordem de documento.
+     */
+    final class Result {
+
+        private final boolean firstOnly;
+        private final List<List<String>> values;
+        // Chaves que ainda não têm nenhum valor
+        private int missing;
+
+        Result(boolean firstOnly) {
+            this.firstOnly = firstOnly;
+            this.values = new ArrayList<List<String>>(keys.length);
+            for (int k = 0; k < keys.length; k++) {
+                values.add(new ArrayList<String>(firstOnly ? 1 : 4));
+            }
+            this.missing = keys.length;
+        }
+
+        /**
+         * Indica se a chave ainda deve receber valores.
+         */
+        boolean wants(int k) {
+            return !firstOnly || values.get(k).isEmpty();
+        }
+
+        /**
+         * Reserva a posição do próximo valor da chave (o conteúdo de uma tag
+         * só é conhecido no seu fechamento, depois das tags internas).
+         */
+        int reserve(int k) {
+            List<String> list = values.get(k);
+            if (list.isEmpty()) {
+                missing--;
+            }
+            list.add(null);
+            return list.size() - 1;
+        }
+
+        void set(int k, int position, String value) {
+            values.get(k).set(position, value);
+        }
+
+        void add(int k, String value) {
+            set(k, reserve(k), value);
+        }
+
+        /**
+         * Indica que, extraindo apenas a primeira ocorrência, todas as
+         * chaves já foram encontradas.
+         */
+        boolean done() {
+            return firstOnly && missing == 0;
+        }
+
+        HashMap<String, String> first() {
+            HashMap<String, String> map = new HashMap<String, String>(keys.length * 2);
+            for (int k = 0; k < keys.length; k++) {
+                List<String> list = values.get(k);
+                if (!list.isEmpty()) {
+                    map.put(keys[k], list.get(0));
+                }
+            }
+            return map;
+        }
+
+        HashMap<String, String[]> all() {
+            HashMap<String, String[]> map = new HashMap<String, String[]>(keys.length * 2);
+            for (int k = 0; k < keys.length; k++) {
+                List<String> list = values.get(k);
+                map.put(keys[k], list.toArray(new String[list.size()]));
+            }
+            return map;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package br.com.paulork.xmlutils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32;
+
+/**
+ * Metadados (tamanho, data de modificação e, opcionalmente, CRC32 do
+ * conteúdo) de um arquivo no momento em que foi lido. Usado para detectar se
+ * o arquivo mudou no disco sem precisar fazer o parse novamente.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+final class FileStamp {
+
+    // Indica que o checksum não foi calculado
+    static final long NO_CHECKSUM = -1;
+
+    final long size;
+    final FileTime modified;
+    long checksum = NO_CHECKSUM;
+
+    private FileStamp(long size, FileTime modified) {
+        this.size = size;
+        this.modified = modified;
+    }
+
+    /**
+     * Lê os metadados atuais do arquivo.
+     *
+     * @param file Arquivo.
+     * @return Metadados do arquivo (sem checksum).
+     * @throws IOException
+     */
+    static FileStamp read(File file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        return new FileStamp(attrs.size(), attrs.lastModifiedTime());
+    }
+
+    /**
+     * Indica se tamanho e data de modificação são iguais.
+     */
+    boolean sameMetadata(FileStamp other) {
+        return other != null && size == other.size && modified.equals(other.modified);
+    }
+
+    /**
+     * Calcula o CRC32 de todo o conteúdo do arquivo.
+     *
+     * @param file Arquivo.
+     * @return CRC32 do conteúdo.
+     * @throws IOException
+     */
+    static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+}
@@ -0,0 +1,74 @@
+package br.com.paulork.xmlutils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Observa um arquivo através de um WatchService e executa uma ação (em uma
+ * thread "daemon" própria) sempre que o arquivo for criado ou alterado.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+class FileWatcher implements Closeable {
+
+    private final WatchService service;
+    private final Thread thread;
+
+    /**
+     * Inicia a observação do arquivo.
+     *
+     * @param file Arquivo a ser observado.
+     * @param onChange Ação executada a cada alteração do arquivo.
+     * @throws IOException
+     */
+    FileWatcher(File file, final Runnable onChange) throws IOException {
+        final Path path = file.getAbsoluteFile().toPath();
+        this.service = FileSystems.getDefault().newWatchService();
+        path.getParent().register(service,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || path.getFileName().equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    if (changed) {
+                        try {
+                            onChange.run();
+                        } catch (RuntimeException ex) {
+                            ex.printStackTrace();
+                        }
+                    }
+                    if (!key.reset()) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                // Observação encerrada
+            }
+        }, "XMLUtils-watch-" + path.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+        thread.interrupt();
+    }
+
+}
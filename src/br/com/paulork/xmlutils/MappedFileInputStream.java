@@ -0,0 +1,114 @@
+package br.com.paulork.xmlutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * InputStream sobre um arquivo mapeado em memória. O arquivo é mapeado em
+ * blocos (no máximo {@link #BLOCK_SIZE} bytes por vez), permitindo a leitura
+ * de arquivos maiores que 2 GB sem copiar o conteúdo para o heap.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+class MappedFileInputStream extends InputStream {
+
+    // Tamanho máximo de cada região mapeada
+    static final long BLOCK_SIZE = 256L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private long position = 0;
+    private MappedByteBuffer buffer;
+    // Posição marcada (mark/reset), -1 quando não há marca
+    private long mark = -1;
+
+    MappedFileInputStream(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    /**
+     * Garante que existe um bloco mapeado com bytes disponíveis.
+     *
+     * @return false quando o fim do arquivo foi atingido.
+     */
+    private boolean ensureBuffer() throws IOException {
+        if (buffer != null && buffer.hasRemaining()) {
+            return true;
+        }
+        if (position >= size) {
+            return false;
+        }
+        long length = Math.min(BLOCK_SIZE, size - position);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        position += length;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBuffer()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureBuffer()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    /**
+     * Posição absoluta do próximo byte a ser lido.
+     */
+    private long offset() {
+        return buffer != null ? position - buffer.remaining() : position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark = offset();
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (mark < 0) {
+            throw new IOException("Nenhuma posição marcada.");
+        }
+        long start = buffer != null ? position - buffer.limit() : position;
+        if (buffer != null && mark >= start) {
+            buffer.position((int) (mark - start));
+        } else {
+            // A marca está em um bloco anterior: mapeia novamente
+            buffer = null;
+            position = mark;
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return buffer != null ? buffer.remaining() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        channel.close();
+    }
+
+}
@@ -0,0 +1,215 @@
+package br.com.paulork.xmlutils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Índice de elementos por nome de tag. É construído em uma única passagem
+ * pela árvore DOM e mantém, para cada nome de tag, a lista de elementos em
+ * ordem de documento (a mesma ordem de "getElementsByTagName").
+ *
+ * As alterações feitas na árvore devem ser informadas através dos métodos
+ * {@link #add(Element)}, {@link #remove(Element)} e
+ * {@link #removeDescendants(Node)}, sempre enquanto os nós ainda estiverem
+ * ligados à árvore.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+class TagIndex {
+
+    private final Document doc;
+    private final Map<String, ArrayList<Element>> byName = new HashMap<String, ArrayList<Element>>();
+
+    TagIndex(Document doc) {
+        this.doc = doc;
+        if (doc.getDocumentElement() != null) {
+            collect(doc.getDocumentElement(), byName);
+        }
+    }
+
+    /**
+     * Retorna os elementos com o nome informado em ordem de documento.
+     *
+     * @param tag Nome da tag.
+     * @param excludeRoot Se true o elemento raiz é ignorado (mesmo
+     * comportamento de {@code doc.getDocumentElement().getElementsByTagName}).
+     * @return NodeList (somente leitura) com os elementos.
+     */
+    NodeList list(String tag, boolean excludeRoot) {
+        List<Element> list = byName.get(tag);
+        if (list == null) {
+            list = Collections.emptyList();
+        }
+        int from = 0;
+        if (excludeRoot && !list.isEmpty() && list.get(0) == doc.getDocumentElement()) {
+            from = 1;
+        }
+        return new ElementList(list, from);
+    }
+
+    /**
+     * Registra um elemento (e seus descendentes) recém inserido na árvore.
+     *
+     * @param element Elemento já anexado ao documento.
+     */
+    void add(Element element) {
+        Map<String, ArrayList<Element>> added = new HashMap<String, ArrayList<Element>>();
+        collect(element, added);
+        for (Map.Entry<String, ArrayList<Element>> e : added.entrySet()) {
+            ArrayList<Element> list = byName.get(e.getKey());
+            if (list == null) {
+                byName.put(e.getKey(), e.getValue());
+            } else {
+                // A sub-árvore é contígua em ordem de documento, então todos
+                // os elementos de mesmo nome entram na mesma posição.
+                list.addAll(insertionPoint(list, e.getValue().get(0)), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Remove do índice um elemento e seus descendentes. Deve ser chamado
+     * antes de desanexar o elemento da árvore.
+     *
+     * @param element Elemento que será removido.
+     */
+    void remove(Element element) {
+        Map<String, ArrayList<Element>> removed = new HashMap<String, ArrayList<Element>>();
+        collect(element, removed);
+        removeAll(removed);
+    }
+
+    /**
+     * Remove do índice todos os elementos descendentes do nó (mas não o
+     * próprio nó). Usado antes de "setTextContent", que substitui todos os
+     * filhos do nó.
+     *
+     * @param node Nó cujos filhos serão substituídos.
+     */
+    void removeDescendants(Node node) {
+        Map<String, ArrayList<Element>> removed = new HashMap<String, ArrayList<Element>>();
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                collect((Element) child, removed);
+            }
+        }
+        removeAll(removed);
+    }
+
+    private void removeAll(Map<String, ArrayList<Element>> removed) {
+        for (Map.Entry<String, ArrayList<Element>> e : removed.entrySet()) {
+            ArrayList<Element> list = byName.get(e.getKey());
+            if (list == null) {
+                continue;
+            }
+            Map<Element, Boolean> set = new IdentityHashMap<Element, Boolean>();
+            for (Element el : e.getValue()) {
+                set.put(el, Boolean.TRUE);
+            }
+            Iterator<Element> it = list.iterator();
+            while (it.hasNext()) {
+                if (set.containsKey(it.next())) {
+                    it.remove();
+                }
+            }
+            if (list.isEmpty()) {
+                byName.remove(e.getKey());
+            }
+        }
+    }
+
+    /**
+     * Posição (busca binária por ordem de documento) onde o elemento deve ser
+     * inserido na lista.
+     */
+    private static int insertionPoint(List<Element> list, Element element) {
+        int last = list.size() - 1;
+        // Caso mais comum: a tag foi adicionada no final do documento.
+        if (follows(element, list.get(last))) {
+            return list.size();
+        }
+        int low = 0;
+        int high = last;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (follows(element, list.get(mid))) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Indica se "node" vem depois de "other" em ordem de documento.
+     */
+    private static boolean follows(Node node, Node other) {
+        return (other.compareDocumentPosition(node) & Node.DOCUMENT_POSITION_FOLLOWING) != 0;
+    }
+
+    /**
+     * Percorre a sub-árvore (sem recursão) agrupando os elementos por nome
+     * em ordem de documento.
+     */
+    private static void collect(Element root, Map<String, ArrayList<Element>> target) {
+        Node node = root;
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                String name = node.getNodeName();
+                ArrayList<Element> list = target.get(name);
+                if (list == null) {
+                    list = new ArrayList<Element>(4);
+                    target.put(name, list);
+                }
+                list.add((Element) node);
+            }
+            Node next = node.getFirstChild();
+            if (next == null) {
+                while (node != root && node.getNextSibling() == null) {
+                    node = node.getParentNode();
+                }
+                if (node == root) {
+                    break;
+                }
+                next = node.getNextSibling();
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * NodeList somente leitura sobre uma lista do índice.
+     */
+    private static final class ElementList implements NodeList {
+
+        private final List<Element> list;
+        private final int from;
+
+        ElementList(List<Element> list, int from) {
+            this.list = list;
+            this.from = from;
+        }
+
+        @Override
+        public Node item(int index) {
+            int i = index + from;
+            return (index >= 0 && i < list.size()) ? list.get(i) : null;
+        }
+
+        @Override
+        public int getLength() {
+            return list.size() - from;
+        }
+    }
+
+}
@@ -0,0 +1,383 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Processamento em lote de muitos arquivos XML em paralelo. Cada arquivo é
+ * lido em um {@link XMLUtils} e entregue à tarefa informada (extração ou
+ * alteração), em um pool de threads de tamanho fixo ou em um ExecutorService
+ * fornecido pelo chamador.
+ *
+ * O numero de arquivos em andamento (lidos ou aguardando na fila do pool) é
+ * limitado: quando o limite é atingido, a thread que alimenta o lote aguarda.
+ * Opcionalmente também pode ser limitado o total de bytes em andamento, para
+ * controlar a memória ocupada pelas árvores DOM.
+ *
+ * Os DocumentBuilders são reutilizados por thread (ver {@link XMLFactories}),
+ * então um pool fixo de threads lê milhões de arquivos alocando apenas um
+ * parser por thread. Em Java 21 ou superior é possível usar threads virtuais
+ * ({@code new XMLBatch(Executors.newVirtualThreadPerTaskExecutor())}), mas
+ * nesse caso cada arquivo cria o seu parser.
+ *
+ * <pre>{@code
+ * try (XMLBatch batch = new XMLBatch(8)) {
+ *     XMLBatch.Report report = batch.process(new File("/dados/notas"),
+ *             xml -> xml.extractFirst(PLANO),
+ *             (file, valores) -> repositorio.grava(valores));
+ *     System.out.println(report);
+ * }
+ * }</pre>
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class XMLBatch implements Closeable {
+
+    // Numero máximo de falhas guardadas no relatório
+    private static final int MAX_ERRORS = 100;
+
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private int maxInFlight;
+    private long maxInFlightBytes = 0;
+    private XMLUtils.LoadMode loadMode = XMLUtils.LoadMode.STREAM;
+
+    /**
+     * Tarefa executada para cada arquivo.
+     *
+     * @param <T> Tipo do resultado.
+     */
+    public interface Task<T> {
+
+        T process(XMLUtils xml) throws Exception;
+    }
+
+    /**
+     * Recebe os resultados (na thread que processou o arquivo, portanto deve
+     * ser seguro para uso por várias threads).
+     *
+     * @param <T> Tipo do resultado.
+     */
+    public interface Handler<T> {
+
+        void result(File file, T result) throws Exception;
+    }
+
+    /**
+     * Cria o lote com um pool fixo de threads, encerrado em {@link #close()}.
+     *
+     * @param threads Numero de threads.
+     */
+    public XMLBatch(int threads) {
+        if (threads < 1) {
+            throw new XMLException("O numero de threads deve ser maior que zero.");
+        }
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "XMLUtils-batch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ownExecutor = true;
+        this.maxInFlight = threads * 2;
+    }
+
+    /**
+     * Cria o lote usando um ExecutorService do chamador, que não é
+     * encerrado em {@link #close()}.
+     *
+     * @param executor ExecutorService onde os arquivos serão processados.
+     */
+    public XMLBatch(ExecutorService executor) {
+        if (executor == null) {
+            throw new XMLException("O ExecutorService não pode ser nulo.");
+        }
+        this.executor = executor;
+        this.ownExecutor = false;
+        this.maxInFlight = Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    /**
+     * Define o numero máximo de arquivos em andamento (em processamento ou
+     * aguardando uma thread livre).
+     *
+     * @param max Numero máximo de arquivos.
+     */
+    public void setMaxInFlight(int max) {
+        if (max < 1) {
+            throw new XMLException("O numero de arquivos em andamento deve ser maior que zero.");
+        }
+        this.maxInFlight = max;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Define o total máximo (tamanho em disco) dos arquivos em andamento. Um
+     * arquivo maior que o limite é processado sozinho. Use 0 para não
+     * limitar (padrão).
+     *
+     * @param bytes Total máximo em bytes.
+     */
+    public void setMaxInFlightBytes(long bytes) {
+        if (bytes < 0) {
+            throw new XMLException("O limite de bytes em andamento não pode ser negativo.");
+        }
+        this.maxInFlightBytes = bytes;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public void setLoadMode(XMLUtils.LoadMode loadMode) {
+        this.loadMode = (loadMode != null ? loadMode : XMLUtils.LoadMode.STREAM);
+    }
+
+    public XMLUtils.LoadMode getLoadMode() {
+        return loadMode;
+    }
+
+    /**
+     * Processa os arquivos ".xml" do diretório (sem subdiretórios).
+     *
+     * @param <T> Tipo do resultado.
+     * @param dir Diretório.
+     * @param task Tarefa executada para cada arquivo.
+     * @param handler Recebe os resultados (pode ser null).
+     * @return Relatório do processamento.
+     * @throws IOException Erro ao listar o diretório.
+     * @throws InterruptedException
+     */
+    public <T> Report process(File dir, Task<T> task, Handler<? super T> handler) throws IOException, InterruptedException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath(), "*.xml")) {
+            return process(new PathIterator(stream.iterator()), task, handler);
+        }
+    }
+
+    /**
+     * Processa os arquivos informados.
+     *
+     * @param <T> Tipo do resultado.
+     * @param files Arquivos.
+     * @param task Tarefa executada para cada arquivo.
+     * @param handler Recebe os resultados (pode ser null).
+     * @return Relatório do processamento.
+     * @throws InterruptedException
+     */
+    public <T> Report process(Iterable<File> files, Task<T> task, Handler<? super T> handler) throws InterruptedException {
+        return process(files.iterator(), task, handler);
+    }
+
+    /**
+     * Processa os arquivos do Stream, consumido aos poucos conforme há
+     * espaço no lote (ex: {@code Files.walk(dir)}). O Stream não é fechado.
+     *
+     * @param <T> Tipo do resultado.
+     * @param paths Caminhos dos arquivos.
+     * @param task Tarefa executada para cada arquivo.
+     * @param handler Recebe os resultados (pode ser null).
+     * @return Relatório do processamento.
+     * @throws InterruptedException
+     */
+    public <T> Report process(Stream<Path> paths, Task<T> task, Handler<? super T> handler) throws InterruptedException {
+        return process(new PathIterator(paths.iterator()), task, handler);
+    }
+
+    private <T> Report process(Iterator<File> files, final Task<T> task, final Handler<? super T> handler) throws InterruptedException {
+        final int slots = maxInFlight;
+        final Semaphore inFlight = new Semaphore(slots);
+        // Bytes em andamento, em KB (permissões do Semaphore são int)
+        final int memoryPermits = (int) Math.min(Integer.MAX_VALUE, maxInFlightBytes / 1024);
+        final Semaphore memory = memoryPermits > 0 ? new Semaphore(memoryPermits) : null;
+        final Report report = new Report();
+        long start = System.nanoTime();
+        try {
+            while (files.hasNext()) {
+                final File file = files.next();
+                final long length = file.length();
+                final int permits = memory != null ? (int) Math.max(1, Math.min(memoryPermits, length / 1024)) : 0;
+                inFlight.acquire();
+                if (memory != null) {
+                    try {
+                        memory.acquire(permits);
+                    } catch (InterruptedException ex) {
+                        inFlight.release();
+                        throw ex;
+                    }
+                }
+                try {
+                    executor.execute(() -> {
+                        try {
+                            run(file, length, task, handler, report);
+                        } finally {
+                            if (memory != null) {
+                                memory.release(permits);
+                            }
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    if (memory != null) {
+                        memory.release(permits);
+                    }
+                    inFlight.release();
+                    throw new XMLException("O ExecutorService recusou o arquivo \"" + file.getAbsolutePath() + "\".", ex);
+                }
+            }
+        } finally {
+            // Aguarda os arquivos em andamento
+            inFlight.acquireUninterruptibly(slots);
+            inFlight.release(slots);
+            report.elapsedNanos = System.nanoTime() - start;
+        }
+        return report;
+    }
+
+    private <T> void run(File file, long length, Task<T> task, Handler<? super T> handler, Report report) {
+        XMLUtils xml = null;
+        try {
+            xml = new XMLUtils(file, loadMode);
+            T result = task.process(xml);
+            if (handler != null) {
+                handler.result(file, result);
+            }
+            report.files.increment();
+            report.bytes.add(length);
+        } catch (Exception ex) {
+            report.fail(file, ex);
+        } finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (IOException ex) {
+                    report.fail(file, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encerra o pool de threads criado pelo lote. Um ExecutorService
+     * fornecido pelo chamador não é encerrado.
+     */
+    @Override
+    public void close() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Relatório de um processamento: arquivos processados, falhas e vazão.
+     */
+    public static final class Report {
+
+        private final LongAdder files = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final Map<File, Exception> errors = new LinkedHashMap<File, Exception>();
+        private volatile long elapsedNanos;
+
+        private Report() {
+        }
+
+        private void fail(File file, Exception ex) {
+            failures.increment();
+            synchronized (errors) {
+                if (errors.size() < MAX_ERRORS) {
+                    errors.put(file, ex);
+                }
+            }
+        }
+
+        /**
+         * @return Numero de arquivos processados com sucesso.
+         */
+        public long getFiles() {
+            return files.sum();
+        }
+
+        /**
+         * @return Numero de arquivos com erro (leitura, parse ou tarefa).
+         */
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * @return Total de bytes dos arquivos processados com sucesso.
+         */
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * @return As primeiras falhas (no máximo 100) por arquivo.
+         */
+        public Map<File, Exception> getErrors() {
+            synchronized (errors) {
+                return Collections.unmodifiableMap(new LinkedHashMap<File, Exception>(errors));
+            }
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000;
+        }
+
+        public double getFilesPerSecond() {
+            return elapsedNanos > 0 ? (getFiles() + getFailures()) * 1e9 / elapsedNanos : 0;
+        }
+
+        public double getMegabytesPerSecond() {
+            return elapsedNanos > 0 ? getBytes() * 1e9 / elapsedNanos / (1024 * 1024) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d arquivos, %d falhas, %d ms, %.1f arquivos/s, %.1f MB/s",
+                    getFiles(), getFailures(), getElapsedMillis(), getFilesPerSecond(), getMegabytesPerSecond());
+        }
+    }
+
+    /**
+     * Iterator de File sobre um iterator de Path.
+     */
+    private static final class PathIterator implements Iterator<File> {
+
+        private final Iterator<Path> paths;
+
+        PathIterator(Iterator<Path> paths) {
+            this.paths = paths;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return paths.hasNext();
+        }
+
+        @Override
+        public File next() {
+            return paths.next().toFile();
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package br.com.paulork.xmlutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Detecção da codificação de um XML a partir dos primeiros bytes: BOM
+ * (UTF-8, UTF-16 e UTF-32), o padrão "&lt;?" em UTF-16 sem BOM e o atributo
+ * "encoding" da declaração XML. Segue o apêndice F da especificação XML.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+final class XMLEncoding {
+
+    // Bytes lidos para a detecção (BOM + declaração)
+    static final int HEAD_SIZE = 512;
+
+    private XMLEncoding() {
+    }
+
+    /**
+     * Detecta a codificação do stream sem consumi-lo (mark/reset).
+     *
+     * @param in Stream posicionado no inicio do XML (deve suportar mark).
+     * @return A codificação, ou null se o XML não tiver BOM nem declaração.
+     * @throws IOException
+     */
+    static String detect(InputStream in) throws IOException {
+        byte[] head = new byte[HEAD_SIZE];
+        in.mark(HEAD_SIZE);
+        int length = 0;
+        try {
+            int n;
+            while (length < HEAD_SIZE && (n = in.read(head, length, HEAD_SIZE - length)) > 0) {
+                length += n;
+            }
+        } finally {
+            in.reset();
+        }
+        return detect(head, length);
+    }
+
+    /**
+     * Detecta a codificação pelos primeiros bytes do XML.
+     *
+     * @param b Bytes do inicio do XML.
+     * @param length Quantidade de bytes válidos.
+     * @return A codificação, ou null se o XML não tiver BOM nem declaração.
+     */
+    static String detect(byte[] b, int length) {
+        if (length >= 4) {
+            int b0 = b[0] & 0xFF, b1 = b[1] & 0xFF, b2 = b[2] & 0xFF, b3 = b[3] & 0xFF;
+            if (b0 == 0x00 && b1 == 0x00 && b2 == 0xFE && b3 == 0xFF) {
+                return "UTF-32BE";
+            }
+            if (b0 == 0xFF && b1 == 0xFE && b2 == 0x00 && b3 == 0x00) {
+                return "UTF-32LE";
+            }
+            // "<?" em UTF-16 sem BOM
+            if (b0 == 0x00 && b1 == 0x3C && b2 == 0x00 && b3 == 0x3F) {
+                return "UTF-16BE";
+            }
+            if (b0 == 0x3C && b1 == 0x00 && b2 == 0x3F && b3 == 0x00) {
+                return "UTF-16LE";
+            }
+        }
+        if (length >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB && (b[2] & 0xFF) == 0xBF) {
+            return "UTF-8";
+        }
+        if (length >= 2) {
+            if ((b[0] & 0xFF) == 0xFE && (b[1] & 0xFF) == 0xFF) {
+                return "UTF-16BE";
+            }
+            if ((b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xFE) {
+                return "UTF-16LE";
+            }
+        }
+        return declared(b, length);
+    }
+
+    /**
+     * Lê o atributo "encoding" da declaração XML (codificações compatíveis
+     * com ASCII). Uma declaração sem "encoding" indica UTF-8.
+     */
+    private static String declared(byte[] b, int length) {
+        String head = new String(b, 0, length, StandardCharsets.ISO_8859_1);
+        if (!head.startsWith("<?xml") || head.length() < 6 || !Character.isWhitespace(head.charAt(5))) {
+            return null;
+        }
+        int end = head.indexOf("?>");
+        if (end < 0) {
+            return null;
+        }
+        String decl = head.substring(5, end);
+        int i = decl.indexOf("encoding");
+        if (i < 0) {
+            return "UTF-8";
+        }
+        i = decl.indexOf('=', i);
+        if (i < 0) {
+            return null;
+        }
+        i++;
+        while (i < decl.length() && Character.isWhitespace(decl.charAt(i))) {
+            i++;
+        }
+        if (i >= decl.length()) {
+            return null;
+        }
+        char quote = decl.charAt(i);
+        int close = (quote == '"' || quote == '\'') ? decl.indexOf(quote, i + 1) : -1;
+        return close > i + 1 ? decl.substring(i + 1, close) : null;
+    }
+
+    /**
+     * Indica se a codificação é suportada pela JVM (nomes inválidos retornam
+     * false em vez de lançar exceção).
+     */
+    static boolean isSupported(String charset) {
+        try {
+            return Charset.isSupported(charset);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Indica se o XML gravado com a codificação pode omitir a declaração
+     * (UTF-8 e seu subconjunto ASCII, o padrão do XML).
+     */
+    static boolean isDefault(String charset) {
+        try {
+            Charset cs = Charset.forName(charset);
+            return cs.equals(StandardCharsets.UTF_8) || cs.equals(StandardCharsets.US_ASCII);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFactoryConfigurationException;
+
+/**
+ * Pool compartilhado de fábricas JAXP e de instâncias de DocumentBuilder,
+ * Transformer e XPath.
+ *
+ * As fábricas são localizadas uma única vez (o "newInstance()" do JAXP faz uma
+ * varredura no classpath a cada chamada) e cada thread mantém suas próprias
+ * instâncias de DocumentBuilder, Transformer e XPath, que são reiniciadas
+ * (reset) a cada uso. Por isso as instâncias retornadas devem ser usadas
+ * apenas pela thread que as obteve e não devem ser guardadas.
+ *
+ * É possível trocar a implementação utilizada (ex: um parser específico)
+ * através dos métodos "set...Factory". A troca invalida as instâncias já
+ * criadas em todas as threads.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public final class XMLFactories {
+
+    private static DocumentBuilderFactory documentBuilderFactory;
+    private static TransformerFactory transformerFactory;
+    private static XPathFactory xpathFactory;
+    private static XMLInputFactory xmlInputFactory;
+    private static XMLOutputFactory xmlOutputFactory;
+    // Incrementado a cada troca de configuração, invalidando as instâncias
+    // guardadas nas threads.
+    private static volatile int generation = 0;
+
+    private static final ThreadLocal<Instances> INSTANCES = new ThreadLocal<Instances>() {
+        @Override
+        protected Instances initialValue() {
+            return new Instances();
+        }
+    };
+
+    private XMLFactories() {
+    }
+
+    /**
+     * Retorna o DocumentBuilder da thread corrente, já reiniciado.
+     *
+     * @return DocumentBuilder pronto para uso.
+     */
+    public static DocumentBuilder documentBuilder() {
+        Instances inst = instances();
+        if (inst.builder == null) {
+            DocumentBuilderFactory factory = getDocumentBuilderFactory();
+            try {
+                synchronized (factory) {
+                    inst.builder = factory.newDocumentBuilder();
+                }
+            } catch (ParserConfigurationException ex) {
+                throw new XMLException("Erro ao criar o DocumentBuilder.", ex);
+            }
+        } else {
+            inst.builder.reset();
+        }
+        return inst.builder;
+    }
+
+    /**
+     * Retorna o Transformer (identidade) da thread corrente, já reiniciado.
+     *
+     * @return Transformer pronto para uso.
+     */
+    public static Transformer transformer() {
+        Instances inst = instances();
+        if (inst.transformer == null) {
+            TransformerFactory factory = getTransformerFactory();
+            try {
+                synchronized (factory) {
+                    inst.transformer = factory.newTransformer();
+                }
+            } catch (TransformerConfigurationException ex) {
+                throw new XMLException("Erro ao criar o Transformer.", ex);
+            }
+        } else {
+            inst.transformer.reset();
+        }
+        return inst.transformer;
+    }
+
+    /**
+     * Retorna o XPath da thread corrente, já reiniciado.
+     *
+     * @return XPath pronto para uso.
+     */
+    public static XPath xpath() {
+        Instances inst = instances();
+        if (inst.xpath == null) {
+            XPathFactory factory = getXPathFactory();
+            synchronized (factory) {
+                inst.xpath = factory.newXPath();
+            }
+        } else {
+            inst.xpath.reset();
+        }
+        return inst.xpath;
+    }
+
+    /**
+     * Geração corrente da configuração, usada por quem guarda objetos criados
+     * a partir das instâncias por thread (ex: {@link XPathQuery}).
+     */
+    static int generation() {
+        return generation;
+    }
+
+    private static Instances instances() {
+        Instances inst = INSTANCES.get();
+        int gen = generation;
+        if (inst.generation != gen) {
+            inst = new Instances();
+            inst.generation = gen;
+            INSTANCES.set(inst);
+        }
+        return inst;
+    }
+
+    public static synchronized DocumentBuilderFactory getDocumentBuilderFactory() {
+        if (documentBuilderFactory == null) {
+            documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        }
+        return documentBuilderFactory;
+    }
+
+    public static synchronized TransformerFactory getTransformerFactory() {
+        if (transformerFactory == null) {
+            transformerFactory = TransformerFactory.newInstance();
+        }
+        return transformerFactory;
+    }
+
+    /**
+     * Retorna a fábrica StAX de leitura. Depois de configurada a fábrica pode
+     * ser compartilhada entre threads, por isso não há instâncias por thread.
+     *
+     * @return XMLInputFactory compartilhada.
+     */
+    public static synchronized XMLInputFactory getXMLInputFactory() {
+        if (xmlInputFactory == null) {
+            xmlInputFactory = XMLInputFactory.newInstance();
+        }
+        return xmlInputFactory;
+    }
+
+    /**
+     * Define a fábrica StAX de leitura usada pelos modos de streaming. Use
+     * null para voltar à implementação padrão.
+     *
+     * @param factory Fábrica já configurada.
+     */
+    public static synchronized void setXMLInputFactory(XMLInputFactory factory) {
+        xmlInputFactory = factory;
+    }
+
+    /**
+     * Retorna a fábrica StAX de gravação, compartilhada entre threads como a
+     * de leitura.
+     *
+     * @return XMLOutputFactory compartilhada.
+     */
+    public static synchronized XMLOutputFactory getXMLOutputFactory() {
+        if (xmlOutputFactory == null) {
+            xmlOutputFactory = XMLOutputFactory.newInstance();
+        }
+        return xmlOutputFactory;
+    }
+
+    /**
+     * Define a fábrica StAX de gravação usada pelo {@link XMLWriter}. Use
+     * null para voltar à implementação padrão.
+     *
+     * @param factory Fábrica já configurada.
+     */
+    public static synchronized void setXMLOutputFactory(XMLOutputFactory factory) {
+        xmlOutputFactory = factory;
+    }
+
+    public static synchronized XPathFactory getXPathFactory() {
+        if (xpathFactory == null) {
+            xpathFactory = XPathFactory.newInstance();
+        }
+        return xpathFactory;
+    }
+
+    /**
+     * Define a fábrica de DocumentBuilder utilizada por todo o XMLUtils. Use
+     * null para voltar à implementação padrão do JAXP.
+     *
+     * @param factory Fábrica já configurada.
+     */
+    public static synchronized void setDocumentBuilderFactory(DocumentBuilderFactory factory) {
+        documentBuilderFactory = factory;
+        generation++;
+    }
+
+    /**
+     * Define a implementação de DocumentBuilderFactory pelo nome da classe.
+     * Ex: "org.apache.xerces.jaxp.DocumentBuilderFactoryImpl".
+     *
+     * @param className Nome da classe da fábrica.
+     */
+    public static void setDocumentBuilderFactory(String className) {
+        setDocumentBuilderFactory(DocumentBuilderFactory.newInstance(className, classLoader()));
+    }
+
+    /**
+     * Define a fábrica de Transformer utilizada por todo o XMLUtils. Use null
+     * para voltar à implementação padrão do JAXP.
+     *
+     * @param factory Fábrica já configurada.
+     */
+    public static synchronized void setTransformerFactory(TransformerFactory factory) {
+        transformerFactory = factory;
+        generation++;
+    }
+
+    /**
+     * Define a implementação de TransformerFactory pelo nome da classe.
+     *
+     * @param className Nome da classe da fábrica.
+     */
+    public static void setTransformerFactory(String className) {
+        setTransformerFactory(TransformerFactory.newInstance(className, classLoader()));
+    }
+
+    /**
+     * Define a fábrica de XPath utilizada por todo o XMLUtils. Use null para
+     * voltar à implementação padrão do JAXP.
+     *
+     * @param factory Fábrica já configurada.
+     */
+    public static synchronized void setXPathFactory(XPathFactory factory) {
+        xpathFactory = factory;
+        generation++;
+    }
+
+    /**
+     * Define a implementação de XPathFactory pelo nome da classe.
+     *
+     * @param className Nome da classe da fábrica.
+     */
+    public static void setXPathFactory(String className) {
+        try {
+            setXPathFactory(XPathFactory.newInstance(XPathFactory.DEFAULT_OBJECT_MODEL_URI, className, classLoader()));
+        } catch (XPathFactoryConfigurationException ex) {
+            throw new XMLException("Erro ao criar a fábrica de XPath [" + className + "].", ex);
+        }
+    }
+
+    private static ClassLoader classLoader() {
+        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+        return cl != null ? cl : XMLFactories.class.getClassLoader();
+    }
+
+    /**
+     * Instâncias mantidas por cada thread.
+     */
+    private static final class Instances {
+
+        int generation;
+        DocumentBuilder builder;
+        Transformer transformer;
+        XPath xpath;
+    }
+
+}
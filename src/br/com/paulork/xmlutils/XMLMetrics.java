@@ -0,0 +1,84 @@
+package br.com.paulork.xmlutils;
+
+/**
+ * Receptor das medições de um {@link XMLUtils}: duração de cada operação
+ * (parse, consulta, alteração, serialização e gravação), bytes lidos e
+ * gravados, releituras e gravações automáticas.
+ *
+ * As implementações são chamadas pelas threads que usam o XMLUtils e devem
+ * ser seguras para uso concorrente e rápidas. Com {@link #NONE} (padrão)
+ * nenhuma medição é feita, nem mesmo a leitura do relógio.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ * @see XMLStats
+ * @see XMLUtils#setMetrics(XMLMetrics)
+ * @see XMLUtils#setDefaultMetrics(XMLMetrics)
+ */
+public interface XMLMetrics {
+
+    /**
+     * Operações medidas.
+     */
+    enum Operation {
+        /**
+         * Parse do arquivo ou do conteúdo informado (bytes: tamanho lido).
+         */
+        PARSE,
+        /**
+         * Consultas: getValue, getValues, getAttributes, getMapChilds,
+         * getNumOccur, XPath, extract e getSubDocument.
+         */
+        QUERY,
+        /**
+         * Alterações: setValue, setValues, setCDATA, createTag, removeTag e
+         * detachSubDocuments.
+         */
+        MUTATE,
+        /**
+         * Serialização do Document (docToStr, docToStream e a própria
+         * gravação).
+         */
+        SERIALIZE,
+        /**
+         * Gravação do arquivo ("save"), inclusive a serialização (bytes:
+         * tamanho gravado).
+         */
+        WRITE
+    }
+
+    /**
+     * Não mede nada.
+     */
+    XMLMetrics NONE = new XMLMetrics() {
+        @Override
+        public void record(Operation operation, long nanos, long bytes) {
+        }
+
+        @Override
+        public void reloaded() {
+        }
+
+        @Override
+        public void flushed() {
+        }
+    };
+
+    /**
+     * Uma operação concluída.
+     *
+     * @param operation Operação.
+     * @param nanos Duração em nanossegundos.
+     * @param bytes Bytes lidos (PARSE) ou gravados (WRITE); 0 nas demais.
+     */
+    void record(Operation operation, long nanos, long bytes);
+
+    /**
+     * O arquivo foi lido novamente pela auto-leitura.
+     */
+    void reloaded();
+
+    /**
+     * As alterações pendentes foram gravadas pela auto-gravação.
+     */
+    void flushed();
+}
@@ -0,0 +1,485 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Alterações em um arquivo XML sem montar a árvore DOM. As alterações
+ * (novo valor, seção CDATA ou remoção da tag) são registradas e depois
+ * aplicadas em uma única passagem StAX, lendo o arquivo de origem e gravando
+ * o de destino. A memória usada não depende do tamanho do arquivo.
+ *
+ * As tags são localizadas pelo nome e pelo indice da ocorrência, contados da
+ * mesma forma que em {@link XMLUtils#setValues(String, String, Integer)} (a
+ * tag raíz não é considerada), ou por um caminho absoluto como
+ * "/lote/nota/cnpj", em que o indice conta apenas as tags com esse caminho.
+ *
+ * <pre>{@code
+ * new XMLPatcher()
+ *         .setValue("cnpj", 0, "12345678000199")
+ *         .setCDATA("/lote/nota/obs", 3, "Observação")
+ *         .removeTag("item", 2)
+ *         .apply(new File("lote.xml"));
+ * }</pre>
+ *
+ * O conteúdo não alterado é copiado evento a evento (textos, comentários,
+ * CDATA, instruções de processamento e atributos na ordem original), na
+ * codificação do arquivo de origem. Diferenças apenas léxicas podem ocorrer,
+ * como o tipo de aspas dos atributos ou tags vazias gravadas como
+ * "&lt;tag&gt;&lt;/tag&gt;".
+ *
+ * Alterações que se sobrepõem (duas alterações na mesma tag, ou uma
+ * alteração dentro de uma tag removida ou substituída) lançam
+ * {@link XMLException} e o arquivo não é alterado.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class XMLPatcher {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Propriedade do parser StAX do JDK que mantém as seções CDATA como
+    // eventos próprios (por padrão viram texto comum).
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+    private static XMLInputFactory inputFactory;
+
+    private enum Type {
+        VALUE, CDATA, REMOVE
+    }
+
+    /**
+     * Alteração registrada para uma ocorrência.
+     */
+    private static final class Edit {
+
+        final Type type;
+        final String value;
+        // Tag (ou caminho) e ocorrência, para as mensagens de erro
+        final String tag;
+        final int index;
+        boolean applied;
+
+        Edit(Type type, String value, String tag, int index) {
+            this.type = type;
+            this.value = value;
+            this.tag = tag;
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + tag + "] (ocorrência " + index + ")";
+        }
+    }
+
+    /**
+     * Alterações de uma tag (ou caminho), por indice da ocorrência.
+     */
+    private static final class Target {
+
+        final String name;
+        // Segmentos do caminho absoluto, null quando localizada pelo nome
+        final String[] path;
+        final Map<Integer, Edit> edits = new HashMap<Integer, Edit>();
+        int count;
+
+        Target(String name, String[] path) {
+            this.name = name;
+            this.path = path;
+        }
+
+        boolean matches(List<String> stack) {
+            if (path == null) {
+                return true;
+            }
+            if (stack.size() != path.length) {
+                return false;
+            }
+            for (int i = path.length - 2; i >= 0; i--) {
+                if (!path[i].equals(stack.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Alvos por nome da tag (o ultimo segmento no caso dos caminhos)
+    private final Map<String, List<Target>> targets = new HashMap<String, List<Target>>();
+    private final Map<String, Target> byKey = new HashMap<String, Target>();
+    private int edits = 0;
+
+    /**
+     * Altera o valor da primeira ocorrência da tag, como
+     * {@link XMLUtils#setValue(String, String)}.
+     *
+     * @param tag Nome da tag ou caminho absoluto.
+     * @param value Novo valor.
+     * @return Este XMLPatcher.
+     */
+    public XMLPatcher setValue(String tag, String value) {
+        return setValue(tag, 0, value);
+    }
+
+    /**
+     * Altera o valor da ocorrência "index" da tag. O conteúdo da tag
+     * (inclusive tags filhas) é substituído pelo texto.
+     *
+     * @param tag Nome da tag ou caminho absoluto.
+     * @param index Indice da ocorrência.
+     * @param value Novo valor.
+     * @return Este XMLPatcher.
+     */
+    public XMLPatcher setValue(String tag, int index, String value) {
+        return add(tag, index, Type.VALUE, value != null ? value : "");
+    }
+
+    /**
+     * Substitui o conteúdo da primeira ocorrência da tag por uma seção
+     * CDATA, como {@link XMLUtils#setCDATA(String, String)}.
+     *
+     * @param tag Nome da tag ou caminho absoluto.
+     * @param value Conteúdo da seção CDATA.
+     * @return Este XMLPatcher.
+     */
+    public XMLPatcher setCDATA(String tag, String value) {
+        return setCDATA(tag, 0, value);
+    }
+
+    /**
+     * Substitui o conteúdo da ocorrência "index" da tag por uma seção CDATA.
+     *
+     * @param tag Nome da tag ou caminho absoluto.
+     * @param index Indice da ocorrência.
+     * @param value Conteúdo da seção CDATA.
+     * @return Este XMLPatcher.
+     */
+    public XMLPatcher setCDATA(String tag, int index, String value) {
+        return add(tag, index, Type.CDATA, value != null ? value : "");
+    }
+
+    /**
+     * Remove a primeira ocorrência da tag, como
+     * {@link XMLUtils#removeTag(String)}.
+     *
+     * @param tag Nome da tag ou caminho absoluto.
+     * @return Este XMLPatcher.
+     */
+    public XMLPatcher removeTag(String tag) {
+        return removeTag(tag, 0);
+    }
+
+    /**
+     * Remove a ocorrência "index" da tag, com todo o seu conteúdo.
+     *
+     * @param tag Nome da tag ou caminho absoluto.
+     * @param index Indice da ocorrência.
+     * @return Este XMLPatcher.
+     */
+    public XMLPatcher removeTag(String tag, int index) {
+        return add(tag, index, Type.REMOVE, null);
+    }
+
+    /**
+     * @return Numero de alterações registradas.
+     */
+    public int size() {
+        return edits;
+    }
+
+    private XMLPatcher add(String tag, int index, Type type, String value) {
+        if (tag == null || tag.isEmpty()) {
+            throw new XMLException("O nome da tag não pode ser nulo ou em branco.");
+        }
+        if (index < 0) {
+            throw new XMLException("Indice informado ['" + index + "'] está fora da faixa.");
+        }
+        Target target = byKey.get(tag);
+        if (target == null) {
+            String[] path = null;
+            String name = tag;
+            if (tag.startsWith("/")) {
+                path = tag.substring(1).split("/");
+                name = path[path.length - 1];
+                if (path.length < 2 || name.isEmpty()) {
+                    throw new XMLException("Caminho inválido: \"" + tag + "\".");
+                }
+            }
+            target = new Target(name, path);
+            byKey.put(tag, target);
+            List<Target> list = targets.get(name);
+            if (list == null) {
+                list = new ArrayList<Target>(1);
+                targets.put(name, list);
+            }
+            list.add(target);
+        }
+        if (target.edits.put(index, new Edit(type, value, tag, index)) == null) {
+            edits++;
+        }
+        return this;
+    }
+
+    /**
+     * Aplica as alterações sobre o próprio arquivo: o resultado é gravado em
+     * um arquivo temporário no mesmo diretório, que então substitui o
+     * original com um "move" atômico. Em caso de erro o arquivo original é
+     * mantido.
+     *
+     * @param file Arquivo a ser alterado.
+     * @throws IOException
+     * @throws XMLException Se o XML for inválido ou alguma tag não existir.
+     */
+    public void apply(File file) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            XMLUtils.copyPermissions(target, temp);
+            apply(file, temp.toFile());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Lê o arquivo de origem e grava o resultado com as alterações no
+     * arquivo de destino (substituído se existir). Em caso de erro o arquivo
+     * de destino é removido.
+     *
+     * @param source Arquivo de origem.
+     * @param target Arquivo de destino (diferente da origem).
+     * @throws IOException
+     * @throws XMLException Se o XML for inválido ou alguma tag não existir.
+     */
+    public void apply(File source, File target) throws IOException {
+        if (source.getCanonicalFile().equals(target.getCanonicalFile())) {
+            throw new XMLException("O arquivo de destino deve ser diferente da origem. Use apply(file).");
+        }
+        boolean ok = false;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(source), BUFFER_SIZE);
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(target), BUFFER_SIZE)) {
+            patch(in, out, source.toURI().toString());
+            ok = true;
+        } catch (XMLStreamException ex) {
+            throw new XMLException("Erro ao alterar o arquivo \"" + source.getName() + "\". [" + ex.getMessage() + "]", ex);
+        } finally {
+            if (!ok) {
+                Files.deleteIfExists(target.toPath());
+            }
+        }
+    }
+
+    private void patch(InputStream in, OutputStream out, String systemId) throws XMLStreamException, IOException {
+        // Zera o estado de uma aplicação anterior
+        for (Target t : byKey.values()) {
+            t.count = 0;
+            for (Edit e : t.edits.values()) {
+                e.applied = false;
+            }
+        }
+        String encoding = XMLEncoding.detect(in);
+        XMLStreamReader reader = getInputFactory().createXMLStreamReader(systemId, in);
+        XMLStreamWriter writer = null;
+        List<String> stack = new ArrayList<String>();
+        // Profundidade da tag cujo conteúdo está sendo descartado (0 = nenhuma)
+        // e se a própria tag é removida ou apenas o seu conteúdo.
+        int skip = 0;
+        boolean removing = false;
+        try {
+            if (encoding == null) {
+                encoding = XMLUtils.UTF_8;
+            }
+            writer = XMLFactories.getXMLOutputFactory().createXMLStreamWriter(out, encoding);
+            if (reader.getVersion() != null) {
+                writer.writeStartDocument(encoding, reader.getVersion());
+                writer.writeCharacters("\n");
+            }
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        String name = XMLStreamUtils.qualifiedName(reader);
+                        stack.add(name);
+                        Edit edit = stack.size() > 1 ? match(name, stack) : null;
+                        if (skip > 0) {
+                            if (edit != null) {
+                                throw new XMLException("A alteração da tag " + edit + " está dentro de uma tag removida ou substituída por outra alteração.");
+                            }
+                            continue;
+                        }
+                        if (edit != null && edit.type == Type.REMOVE) {
+                            skip = stack.size();
+                            removing = true;
+                            continue;
+                        }
+                        copyStartElement(reader, writer, name);
+                        if (edit != null) {
+                            if (edit.type == Type.VALUE) {
+                                writer.writeCharacters(edit.value);
+                            } else {
+                                writeCData(writer, edit.value);
+                            }
+                            // Descarta o conteúdo original, mas mantém a tag
+                            skip = stack.size();
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        int depth = stack.size();
+                        stack.remove(depth - 1);
+                        if (skip > 0) {
+                            if (depth > skip) {
+                                continue;
+                            }
+                            skip = 0;
+                            if (removing) {
+                                removing = false;
+                                continue;
+                            }
+                        }
+                        writer.writeEndElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        if (skip == 0 && !stack.isEmpty()) {
+                            writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        if (skip == 0) {
+                            writer.writeCData(reader.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        if (skip == 0) {
+                            writer.writeComment(reader.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        if (skip == 0) {
+                            writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                        }
+                        break;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        if (skip == 0) {
+                            writer.writeEntityRef(reader.getLocalName());
+                        }
+                        break;
+                    case XMLStreamConstants.DTD:
+                        writer.writeDTD(reader.getText());
+                        break;
+                    case XMLStreamConstants.END_DOCUMENT:
+                        writer.writeEndDocument();
+                        break;
+                    default:
+                        break;
+                }
+            }
+            writer.flush();
+        } finally {
+            reader.close();
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        for (Target t : byKey.values()) {
+            for (Edit e : t.edits.values()) {
+                if (!e.applied) {
+                    throw new XMLException("A tag " + e + " especificada não existe no XML.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Fábrica StAX própria do XMLPatcher, que preserva as seções CDATA. A
+     * fábrica compartilhada de {@link XMLFactories} não é alterada.
+     */
+    private static synchronized XMLInputFactory getInputFactory() {
+        if (inputFactory == null) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            if (factory.isPropertySupported(REPORT_CDATA)) {
+                factory.setProperty(REPORT_CDATA, Boolean.TRUE);
+            }
+            inputFactory = factory;
+        }
+        return inputFactory;
+    }
+
+    /**
+     * Conta a ocorrência da tag em todos os alvos com esse nome e retorna a
+     * alteração registrada para ela, se houver. Duas alterações para a mesma
+     * tag (pelo nome e pelo caminho) são um erro.
+     */
+    private Edit match(String name, List<String> stack) {
+        List<Target> list = targets.get(name);
+        if (list == null) {
+            return null;
+        }
+        Edit found = null;
+        for (Target t : list) {
+            if (t.matches(stack)) {
+                Edit edit = t.edits.get(t.count++);
+                if (edit != null) {
+                    if (found != null) {
+                        throw new XMLException("As alterações das tags " + found + " e " + edit + " se referem à mesma tag.");
+                    }
+                    edit.applied = true;
+                    found = edit;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static void copyStartElement(XMLStreamReader reader, XMLStreamWriter writer, String name) throws XMLStreamException {
+        writer.writeStartElement(name);
+        for (int i = 0, n = reader.getNamespaceCount(); i < n; i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            if (prefix == null || prefix.isEmpty()) {
+                writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+            } else {
+                writer.writeNamespace(prefix, reader.getNamespaceURI(i));
+            }
+        }
+        for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String local = reader.getAttributeLocalName(i);
+            writer.writeAttribute(prefix == null || prefix.isEmpty() ? local : prefix + ":" + local, reader.getAttributeValue(i));
+        }
+    }
+
+    private static void writeCData(XMLStreamWriter writer, String text) throws XMLStreamException {
+        int start = 0;
+        int i;
+        while ((i = text.indexOf("]]>", start)) >= 0) {
+            writer.writeCData(text.substring(start, i + 2));
+            start = i + 2;
+        }
+        writer.writeCData(text.substring(start));
+    }
+
+}
@@ -0,0 +1,294 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Implementação padrão do {@link XMLMetrics}: contadores e histogramas de
+ * latência por operação, sem locks (LongAdder e faixas de potência de 2).
+ * Pode ser compartilhada por várias instâncias de {@link XMLUtils} e
+ * publicada via JMX.
+ *
+ * <pre>{@code
+ * XMLStats stats = new XMLStats();
+ * stats.register("notas");
+ * XMLUtils.setDefaultMetrics(stats);
+ * ...
+ * System.out.println(stats.getParse().getP99Millis());
+ * }</pre>
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class XMLStats implements XMLMetrics, XMLStatsMXBean {
+
+    public static final String DOMAIN = "br.com.paulork.xmlutils";
+
+    // Faixa "b" do histograma: duração entre 2^(b-1) e 2^b - 1 ns
+    private static final int BUCKETS = 64;
+
+    private final Map<Operation, Histogram> histograms = new EnumMap<Operation, Histogram>(Operation.class);
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private ObjectName objectName;
+
+    public XMLStats() {
+        for (Operation op : Operation.values()) {
+            histograms.put(op, new Histogram());
+        }
+    }
+
+    @Override
+    public void record(Operation operation, long nanos, long bytes) {
+        histograms.get(operation).add(nanos);
+        if (bytes > 0) {
+            if (operation == Operation.PARSE) {
+                bytesRead.add(bytes);
+            } else if (operation == Operation.WRITE) {
+                bytesWritten.add(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void reloaded() {
+        reloads.increment();
+    }
+
+    @Override
+    public void flushed() {
+        flushes.increment();
+    }
+
+    /**
+     * Retorna os números atuais da operação.
+     *
+     * @param operation Operação.
+     * @return Cópia dos contadores da operação.
+     */
+    public Snapshot get(Operation operation) {
+        return histograms.get(operation).snapshot();
+    }
+
+    @Override
+    public Snapshot getParse() {
+        return get(Operation.PARSE);
+    }
+
+    @Override
+    public Snapshot getQuery() {
+        return get(Operation.QUERY);
+    }
+
+    @Override
+    public Snapshot getMutate() {
+        return get(Operation.MUTATE);
+    }
+
+    @Override
+    public Snapshot getSerialize() {
+        return get(Operation.SERIALIZE);
+    }
+
+    @Override
+    public Snapshot getWrite() {
+        return get(Operation.WRITE);
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Zera todos os contadores. Medições feitas durante o reset podem ser
+     * perdidas.
+     */
+    @Override
+    public void reset() {
+        for (Histogram h : histograms.values()) {
+            h.reset();
+        }
+        bytesRead.reset();
+        bytesWritten.reset();
+        reloads.reset();
+        flushes.reset();
+    }
+
+    /**
+     * Publica as estatísticas no MBeanServer da plataforma com o nome
+     * "br.com.paulork.xmlutils:type=XMLStats,name=[name]".
+     *
+     * @param name Nome que identifica as estatísticas (ex: o arquivo).
+     * @return ObjectName registrado.
+     */
+    public synchronized ObjectName register(String name) {
+        unregister();
+        try {
+            ObjectName on = new ObjectName(DOMAIN + ":type=XMLStats,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, on);
+            objectName = on;
+            return on;
+        } catch (JMException ex) {
+            throw new XMLException("Erro ao registrar as estatísticas \"" + name + "\" no JMX.", ex);
+        }
+    }
+
+    /**
+     * Remove as estatísticas do MBeanServer, caso tenham sido publicadas.
+     */
+    public synchronized void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException ex) {
+                ex.printStackTrace();
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Operation op : Operation.values()) {
+            sb.append(op).append(": ").append(get(op)).append('\n');
+        }
+        sb.append("lidos: ").append(getBytesRead()).append(" bytes, gravados: ").append(getBytesWritten())
+                .append(" bytes, releituras: ").append(getReloads()).append(", auto-gravações: ").append(getFlushes());
+        return sb.toString();
+    }
+
+    /**
+     * Contadores de uma operação.
+     */
+    private static final class Histogram {
+
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void add(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            total.add(nanos);
+            max.accumulate(nanos);
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        }
+
+        void reset() {
+            total.reset();
+            max.reset();
+            for (int b = 0; b < BUCKETS; b++) {
+                buckets.set(b, 0);
+            }
+        }
+
+        Snapshot snapshot() {
+            long[] copy = new long[BUCKETS];
+            long n = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                copy[b] = buckets.get(b);
+                n += copy[b];
+            }
+            return new Snapshot(n, total.sum(), max.get(), percentile(copy, n, 0.5), percentile(copy, n, 0.99));
+        }
+
+        /**
+         * Limite superior da faixa que contém o percentil.
+         */
+        private static long percentile(long[] buckets, long n, double p) {
+            if (n == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(n * p);
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += buckets[b];
+                if (seen >= target) {
+                    return b == 0 ? 0 : (1L << b) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Números de uma operação em um dado momento. Os percentis são
+     * aproximados pelo limite superior da faixa (potência de 2) do
+     * histograma.
+     */
+    public static final class Snapshot {
+
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+
+        Snapshot(long count, long totalNanos, long maxNanos, long p50Nanos, long p99Nanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        public double getMeanMillis() {
+            return count > 0 ? totalNanos / 1e6 / count : 0;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        public double getP50Millis() {
+            return p50Nanos / 1e6;
+        }
+
+        public double getP99Millis() {
+            return p99Nanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d operações, média %.3f ms, p50 %.3f ms, p99 %.3f ms, máx %.3f ms",
+                    count, getMeanMillis(), getP50Millis(), getP99Millis(), getMaxMillis());
+        }
+    }
+
+}
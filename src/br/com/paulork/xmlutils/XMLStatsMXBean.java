@@ -0,0 +1,29 @@
+package br.com.paulork.xmlutils;
+
+/**
+ * Interface JMX do {@link XMLStats}.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public interface XMLStatsMXBean {
+
+    XMLStats.Snapshot getParse();
+
+    XMLStats.Snapshot getQuery();
+
+    XMLStats.Snapshot getMutate();
+
+    XMLStats.Snapshot getSerialize();
+
+    XMLStats.Snapshot getWrite();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getReloads();
+
+    long getFlushes();
+
+    void reset();
+}
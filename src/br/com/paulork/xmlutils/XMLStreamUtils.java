@@ -0,0 +1,445 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Leitura somente-leitura, via streaming (StAX), de arquivos XML muito
+ * grandes. Nenhuma árvore DOM é montada: cada consulta percorre o arquivo uma
+ * única vez com memória constante (além dos próprios valores retornados) e a
+ * leitura é interrompida assim que a resposta é conhecida.
+ *
+ * Os métodos seguem a mesma semântica dos equivalentes do {@link XMLUtils}.
+ * Para extrair várias tags de uma só vez use {@link #getAllValues(String...)},
+ * que percorre o arquivo apenas uma vez.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class XMLStreamUtils {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // XML no disco
+    private final File file;
+
+    /**
+     * Construtor recebe um File do arquivo a ser lido.
+     *
+     * @param file File do arquivo a ser lido.
+     */
+    public XMLStreamUtils(File file) {
+        if (file != null && file.exists()) {
+            this.file = file;
+        } else {
+            throw new XMLException("O arquivo \"" + (file != null ? file.getAbsolutePath() : null) + "\" não existe.");
+        }
+    }
+
+    /**
+     * Construtor recebe uma string com o caminho do arquivo a ser lido.
+     *
+     * @param file String com o caminho do arquivo a ser lido
+     */
+    public XMLStreamUtils(String file) {
+        this(new File(file));
+    }
+
+    /**
+     * Retorna o valor que está entre a tag informada. Retorna apenas o valor da
+     * primeira ocorrência da tag; a leitura do arquivo é encerrada assim que
+     * ela termina.
+     *
+     * @param tag Nome da tag.
+     * @return Retorna o valor da tag ou null se a tag não existir.
+     */
+    public String getValue(String tag) {
+        TextCollector collector = new TextCollector(Arrays.asList(tag), true);
+        scan(collector);
+        List<String> values = collector.values.get(tag);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Retorna todos os valores de todas as ocorrências da tag em ordem
+     * crescente da primeira encontrada até a ultima.
+     *
+     * @param tag Nome da tag.
+     * @return Retorna um array com os valores de todas as ocorrências da tag.
+     */
+    public String[] getValues(String tag) {
+        TextCollector collector = new TextCollector(Arrays.asList(tag), false);
+        scan(collector);
+        List<String> values = collector.values.get(tag);
+        return values.toArray(new String[values.size()]);
+    }
+
+    /**
+     * Retorna os valores de todas as ocorrências de cada uma das tags
+     * informadas, percorrendo o arquivo uma única vez.
+     *
+     * @param tags Nomes das tags.
+     * @return Mapa [tag, valores] com todas as tags solicitadas (tags não
+     * encontradas retornam um array vazio).
+     */
+    public HashMap<String, String[]> getAllValues(String... tags) {
+        TextCollector collector = new TextCollector(Arrays.asList(tags), false);
+        scan(collector);
+        HashMap<String, String[]> map = new HashMap<String, String[]>();
+        for (String tag : tags) {
+            List<String> values = collector.values.get(tag);
+            map.put(tag, values.toArray(new String[values.size()]));
+        }
+        return map;
+    }
+
+    /**
+     * Retorna o numero de ocorrências da TAG (a tag raiz não é contada, assim
+     * como em {@link XMLUtils#getNumOccur(String)}).
+     *
+     * @param tag Nome da tag.
+     * @return Retorna o numero de ocorrências da TAG no XML.
+     */
+    public int getNumOccur(final String tag) {
+        final int[] count = {0};
+        scan(new Handler() {
+            @Override
+            boolean startElement(String name, int depth, XMLStreamReader reader) {
+                if (depth > 1 && name.equals(tag)) {
+                    count[0]++;
+                }
+                return true;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Retorna um HashMap no esquema [CHAVE, VALOR], onde a CHAVE seria o nome
+     * das tags filhas (da primeira ocorrência da tag) e o VALOR, o valor das
+     * respectivas tags filhas.
+     *
+     * @param tag Nome da tag.
+     * @return Retorna um {@code HashMap<String, String>} com os nomes e os
+     * valores das tags filhas da tag informada.
+     * @see XMLUtils#getMapChilds(String)
+     */
+    public HashMap<String, String> getMapChilds(final String tag) {
+        final HashMap<String, String> map = new HashMap<String, String>();
+        final boolean[] found = {false};
+        scan(new Handler() {
+            // Profundidade da tag pai; 0 enquanto não encontrada
+            private int parentDepth = 0;
+            private String child;
+            private StringBuilder text;
+
+            @Override
+            boolean startElement(String name, int depth, XMLStreamReader reader) {
+                if (parentDepth == 0) {
+                    if (name.equals(tag)) {
+                        parentDepth = depth;
+                        found[0] = true;
+                    }
+                } else if (depth == parentDepth + 1) {
+                    child = name;
+                    text = new StringBuilder();
+                }
+                return true;
+            }
+
+            @Override
+            void characters(XMLStreamReader reader) {
+                if (text != null) {
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+            }
+
+            @Override
+            boolean endElement(String name, int depth) {
+                if (parentDepth != 0) {
+                    if (depth == parentDepth + 1) {
+                        map.put(child, text.toString());
+                        text = null;
+                    } else if (depth == parentDepth) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        if (!found[0]) {
+            throw new XMLException("A tag [" + tag + "] especificada não existe no XML.");
+        }
+        return map;
+    }
+
+    /**
+     * Extrai o valor da primeira ocorrência de cada tag (ou caminho) do
+     * plano, em uma única leitura do arquivo, interrompida assim que todas
+     * forem encontradas.
+     *
+     * @param plan Plano de extração.
+     * @return Mapa [chave, valor]. Chaves não encontradas não fazem parte do
+     * mapa.
+     * @see XMLUtils#extractFirst(ExtractionPlan)
+     */
+    public HashMap<String, String> extractFirst(ExtractionPlan plan) {
+        PlanCollector collector = new PlanCollector(plan, true);
+        scan(collector);
+        return collector.result.first();
+    }
+
+    /**
+     * Extrai os valores de todas as ocorrências de cada tag (ou caminho) do
+     * plano, em uma única leitura do arquivo.
+     *
+     * @param plan Plano de extração.
+     * @return Mapa [chave, valores] com todas as chaves do plano (chaves não
+     * encontradas retornam um array vazio).
+     * @see XMLUtils#extractAll(ExtractionPlan)
+     */
+    public HashMap<String, String[]> extractAll(ExtractionPlan plan) {
+        PlanCollector collector = new PlanCollector(plan, false);
+        scan(collector);
+        return collector.result.all();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Percorre o arquivo entregando os eventos ao handler, até o fim do
+     * documento ou até o handler solicitar a interrupção.
+     */
+    private void scan(Handler handler) {
+        InputStream in = null;
+        XMLStreamReader reader = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            reader = XMLFactories.getXMLInputFactory().createXMLStreamReader(file.toURI().toString(), in);
+            int depth = 0;
+            boolean proceed = true;
+            while (proceed && reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        proceed = handler.startElement(qualifiedName(reader), depth, reader);
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        proceed = handler.endElement(qualifiedName(reader), depth);
+                        depth--;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        handler.characters(reader);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new XMLException("Erro ao fazer o parse do arquivo XML.", ex);
+        } catch (IOException ex) {
+            throw new XMLException("Erro de leitura do arquivo XML.", ex);
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+                if (in != null) {
+                    in.close();
+                }
+            } catch (XMLStreamException | IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Nome qualificado (prefixo:nome) do elemento corrente, o mesmo retornado
+     * por "getNodeName()" no DOM.
+     */
+    static String qualifiedName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        if (prefix == null || prefix.isEmpty()) {
+            return reader.getLocalName();
+        }
+        return prefix + ":" + reader.getLocalName();
+    }
+
+    /**
+     * Recebe os eventos da leitura. Os métodos de elemento retornam false
+     * para interromper a leitura.
+     */
+    abstract static class Handler {
+
+        boolean startElement(String name, int depth, XMLStreamReader reader) {
+            return true;
+        }
+
+        void characters(XMLStreamReader reader) {
+        }
+
+        boolean endElement(String name, int depth) {
+            return true;
+        }
+    }
+
+    /**
+     * Coleta o conteúdo texto (equivalente a "getTextContent()") de todas as
+     * ocorrências de um conjunto de tags, inclusive ocorrências aninhadas.
+     */
+    private static final class TextCollector extends Handler {
+
+        private final Set<String> tags;
+        private final boolean firstOnly;
+        final HashMap<String, List<String>> values = new HashMap<String, List<String>>();
+        // Ocorrências ainda abertas (normalmente nenhuma ou uma)
+        private final List<Capture> open = new ArrayList<Capture>(4);
+
+        TextCollector(List<String> tags, boolean firstOnly) {
+            this.tags = new HashSet<String>(tags);
+            this.firstOnly = firstOnly;
+            for (String tag : tags) {
+                values.put(tag, new ArrayList<String>());
+            }
+        }
+
+        @Override
+        boolean startElement(String name, int depth, XMLStreamReader reader) {
+            if (tags.contains(name)) {
+                List<String> list = values.get(name);
+                // Reserva a posição para manter a ordem de documento
+                list.add(null);
+                open.add(new Capture(list, list.size() - 1, depth));
+            }
+            return true;
+        }
+
+        @Override
+        void characters(XMLStreamReader reader) {
+            for (int i = 0; i < open.size(); i++) {
+                open.get(i).text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+
+        @Override
+        boolean endElement(String name, int depth) {
+            if (!open.isEmpty()) {
+                Capture last = open.get(open.size() - 1);
+                if (last.depth == depth) {
+                    open.remove(open.size() - 1);
+                    last.target.set(last.position, last.text.toString());
+                    if (firstOnly && open.isEmpty()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Coleta os valores das chaves de um {@link ExtractionPlan}.
+     */
+    private static final class PlanCollector extends Handler {
+
+        private final ExtractionPlan plan;
+        private final ExtractionPlan.Matcher matcher;
+        final ExtractionPlan.Result result;
+        // Conteúdos ainda abertos: [chave, posição, profundidade]
+        private final List<int[]> open = new ArrayList<int[]>(4);
+        private final List<StringBuilder> texts = new ArrayList<StringBuilder>(4);
+
+        PlanCollector(ExtractionPlan plan, boolean firstOnly) {
+            this.plan = plan;
+            this.matcher = plan.matcher();
+            this.result = plan.result(firstOnly);
+        }
+
+        @Override
+        boolean startElement(String name, int depth, XMLStreamReader reader) {
+            int[] matched = matcher.start(name);
+            if (matched != null) {
+                for (int k : matched) {
+                    if (!result.wants(k)) {
+                        continue;
+                    }
+                    String attr = plan.attribute(k);
+                    if (attr == null) {
+                        open.add(new int[]{k, result.reserve(k), depth});
+                        texts.add(new StringBuilder());
+                    } else {
+                        String value = attribute(reader, attr);
+                        if (value != null) {
+                            result.add(k, value);
+                        }
+                    }
+                }
+            }
+            return !(result.done() && open.isEmpty());
+        }
+
+        @Override
+        void characters(XMLStreamReader reader) {
+            for (int i = 0; i < texts.size(); i++) {
+                texts.get(i).append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+
+        @Override
+        boolean endElement(String name, int depth) {
+            matcher.end();
+            while (!open.isEmpty() && open.get(open.size() - 1)[2] == depth) {
+                int[] capture = open.remove(open.size() - 1);
+                result.set(capture[0], capture[1], texts.remove(texts.size() - 1).toString());
+            }
+            return !(result.done() && open.isEmpty());
+        }
+
+        /**
+         * Valor do atributo pelo nome qualificado (o mesmo usado no DOM).
+         */
+        private static String attribute(XMLStreamReader reader, String name) {
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String prefix = reader.getAttributePrefix(i);
+                String qname = (prefix == null || prefix.isEmpty())
+                        ? reader.getAttributeLocalName(i)
+                        : prefix + ":" + reader.getAttributeLocalName(i);
+                if (qname.equals(name)) {
+                    return reader.getAttributeValue(i);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Capture {
+
+        final List<String> target;
+        final int position;
+        final int depth;
+        final StringBuilder text = new StringBuilder();
+
+        Capture(List<String> target, int position, int depth) {
+            this.target = target;
+            this.position = position;
+            this.depth = depth;
+        }
+    }
+
+}
@@ -0,0 +1,295 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Modelo de XML para a geração de muitas mensagens com a mesma estrutura. O
+ * modelo é lido uma única vez; cada mensagem é uma cópia (cloneNode) do
+ * documento original, mais barata que um novo parse com
+ * {@code new XMLUtils(StringBuilder)}.
+ *
+ * Os pontos a preencher ("slots") são localizados no modelo uma única vez e
+ * guardados como a rota de posições dos nós a partir da tag raíz, então
+ * preencher um slot não faz nenhuma busca por nome de tag.
+ *
+ * <pre>{@code
+ * XMLTemplate modelo = new XMLTemplate(xml);
+ * int NUMERO = modelo.slot("numero");
+ * int SERIE = modelo.attributeSlot("nota", 0, "serie");
+ *
+ * XMLTemplate.Instance msg = modelo.newInstance();
+ * msg.set(NUMERO, "123").set(SERIE, "1");
+ * enviar(msg.toString());
+ * }</pre>
+ *
+ * O modelo pode ser usado por várias threads: o documento do modelo é
+ * expandido por completo na criação (como no modo concorrente do
+ * {@link XMLUtils}), então as cópias são feitas sem lock. As instâncias não
+ * devem ser compartilhadas entre threads.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public final class XMLTemplate {
+
+    // Expandido por completo: a leitura (cloneNode) não altera mais a árvore
+    // e pode ser feita por várias threads ao mesmo tempo.
+    private final Document prototype;
+    private volatile Slot[] slots = new Slot[0];
+
+    /**
+     * Ponto de preenchimento: rota até a tag e, opcionalmente, o atributo.
+     */
+    private static final class Slot {
+
+        final String tag;
+        final int[] route;
+        final String attribute;
+
+        Slot(String tag, int[] route, String attribute) {
+            this.tag = tag;
+            this.route = route;
+            this.attribute = attribute;
+        }
+    }
+
+    /**
+     * Lê o modelo.
+     *
+     * @param xml Conteúdo do modelo.
+     * @throws XMLException Se o XML for inválido.
+     */
+    public XMLTemplate(CharSequence xml) {
+        try {
+            this.prototype = XMLFactories.documentBuilder().parse(new InputSource(new StringReader(xml.toString())));
+            XMLUtils.expand(prototype);
+        } catch (SAXException ex) {
+            throw new XMLException("Erro ao fazer o parse do modelo XML.", ex);
+        } catch (IOException ex) {
+            throw new XMLException("Erro de leitura do modelo XML.", ex);
+        }
+    }
+
+    /**
+     * Cria um modelo a partir de uma cópia do documento.
+     *
+     * @param document Documento do modelo (não é alterado).
+     */
+    public XMLTemplate(Document document) {
+        this.prototype = (Document) document.cloneNode(true);
+        XMLUtils.expand(prototype);
+    }
+
+    /**
+     * Registra o valor da primeira ocorrência da tag como slot, como em
+     * {@link XMLUtils#setValue(String, String)}.
+     *
+     * @param tag Nome da tag.
+     * @return Identificador do slot.
+     * @throws XMLException Se a tag não existir no modelo.
+     */
+    public int slot(String tag) {
+        return slot(tag, 0);
+    }
+
+    /**
+     * Registra o valor da ocorrência "index" da tag como slot. Como o valor
+     * substitui todo o conteúdo da tag, ela não pode conter outros slots.
+     *
+     * @param tag Nome da tag.
+     * @param index Indice da ocorrência (a tag raíz não é considerada).
+     * @return Identificador do slot.
+     * @throws XMLException Se a ocorrência da tag não existir no modelo ou se
+     * o slot ficar dentro ou em volta de outro slot de valor.
+     */
+    public int slot(String tag, int index) {
+        return add(new Slot(tag, route(tag, index), null));
+    }
+
+    /**
+     * Registra um atributo da ocorrência "index" da tag como slot. O
+     * atributo não precisa existir no modelo.
+     *
+     * @param tag Nome da tag.
+     * @param index Indice da ocorrência (a tag raíz não é considerada).
+     * @param attribute Nome do atributo.
+     * @return Identificador do slot.
+     * @throws XMLException Se a ocorrência da tag não existir no modelo ou
+     * estiver dentro de um slot de valor.
+     */
+    public int attributeSlot(String tag, int index, String attribute) {
+        return add(new Slot(tag, route(tag, index), attribute));
+    }
+
+    private synchronized int add(Slot slot) {
+        for (Slot other : slots) {
+            if (contains(other, slot) || contains(slot, other)) {
+                Slot outer = contains(other, slot) ? other : slot;
+                Slot inner = outer == other ? slot : other;
+                throw new XMLException("O slot da tag [" + inner.tag + "] está dentro do slot de valor da tag ["
+                        + outer.tag + "], que substitui todo o conteúdo da tag.");
+            }
+        }
+        Slot[] copy = Arrays.copyOf(slots, slots.length + 1);
+        copy[slots.length] = slot;
+        slots = copy;
+        return slots.length - 1;
+    }
+
+    /**
+     * Verifica se o slot "inner" fica dentro do conteúdo substituído pelo
+     * slot de valor "outer" (a rota de "outer" é o início da rota de
+     * "inner").
+     */
+    private static boolean contains(Slot outer, Slot inner) {
+        if (outer.attribute != null || outer.route.length >= inner.route.length) {
+            return false;
+        }
+        for (int i = 0; i < outer.route.length; i++) {
+            if (outer.route[i] != inner.route[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calcula a rota (posição de cada nó entre os irmãos) da tag raíz até a
+     * ocorrência da tag.
+     */
+    private int[] route(String tag, int index) {
+        List<Integer> steps = new ArrayList<Integer>();
+        Element root = prototype.getDocumentElement();
+        Node node = root.getElementsByTagName(tag).item(index);
+        if (node == null) {
+            throw new XMLException("A tag [" + tag + "] (ocorrência " + index + ") especificada não existe no modelo.");
+        }
+        for (Node n = node; n != root; n = n.getParentNode()) {
+            int position = 0;
+            for (Node s = n.getPreviousSibling(); s != null; s = s.getPreviousSibling()) {
+                position++;
+            }
+            steps.add(position);
+        }
+        int[] route = new int[steps.size()];
+        for (int i = 0; i < route.length; i++) {
+            route[i] = steps.get(route.length - 1 - i);
+        }
+        return route;
+    }
+
+    /**
+     * @return Numero de slots registrados.
+     */
+    public int getSlotCount() {
+        return slots.length;
+    }
+
+    /**
+     * Cria uma nova mensagem, cópia do modelo.
+     *
+     * @return A nova instância.
+     */
+    public Instance newInstance() {
+        return new Instance((Document) prototype.cloneNode(true), slots);
+    }
+
+    /**
+     * Mensagem criada a partir do modelo. As alterações não afetam o modelo
+     * nem as outras instâncias.
+     */
+    public static final class Instance {
+
+        private final Document document;
+        private final Slot[] slots;
+
+        private Instance(Document document, Slot[] slots) {
+            this.document = document;
+            this.slots = slots;
+        }
+
+        /**
+         * Define o valor do slot (o conteúdo da tag ou o valor do atributo).
+         *
+         * @param slot Identificador do slot.
+         * @param value Novo valor.
+         * @return Esta instância.
+         */
+        public Instance set(int slot, String value) {
+            Slot s = slot(slot);
+            Node node = resolve(s);
+            if (s.attribute != null) {
+                ((Element) node).setAttribute(s.attribute, value);
+            } else {
+                node.setTextContent(value);
+            }
+            return this;
+        }
+
+        /**
+         * Substitui o conteúdo da tag do slot por uma seção CDATA, como em
+         * {@link XMLUtils#setCDATA(String, String)}.
+         *
+         * @param slot Identificador do slot.
+         * @param value Conteúdo da seção CDATA.
+         * @return Esta instância.
+         */
+        public Instance setCDATA(int slot, String value) {
+            Slot s = slot(slot);
+            if (s.attribute != null) {
+                throw new XMLException("O slot do atributo \"" + s.attribute + "\" da tag [" + s.tag + "] não aceita CDATA.");
+            }
+            Node node = resolve(s);
+            node.setTextContent("");
+            node.appendChild(document.createCDATASection(value));
+            return this;
+        }
+
+        private Slot slot(int slot) {
+            if (slot < 0 || slot >= slots.length) {
+                throw new XMLException("Slot inválido: " + slot + ".");
+            }
+            return slots[slot];
+        }
+
+        /**
+         * Segue a rota do slot a partir da tag raíz.
+         */
+        private Node resolve(Slot slot) {
+            Node node = document.getDocumentElement();
+            for (int step : slot.route) {
+                node = node.getFirstChild();
+                for (int i = 0; i < step; i++) {
+                    node = node.getNextSibling();
+                }
+            }
+            return node;
+        }
+
+        public Document getDocument() {
+            return document;
+        }
+
+        /**
+         * @return Um XMLUtils sobre o documento desta instância.
+         */
+        public XMLUtils toXMLUtils() {
+            return new XMLUtils(document);
+        }
+
+        @Override
+        public String toString() {
+            return toXMLUtils().toString();
+        }
+    }
+
+}
@@ -2,23 +2,43 @@ package br.com.paulork.xmlutils;
 
 import br.com.paulork.exceptions.XMLException;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
@@ -27,32 +47,233 @@ import org.xml.sax.SAXException;
 /**
  * @author Paulo R. Kraemer <paulork10@gmail.com>
  */
-public class XMLUtils {
+public class XMLUtils implements Closeable {
 
     // Árvore DOM
-    private Document doc;
+    private volatile Document doc;
     // XML no disco
     private File file;
     // Reflete as alteração diretamente para o disco. False por default. Assim 
     // realize as alterações e posteriormente usar o metodo "save" para salvar 
     // todas as alterações de uma só vez.
     private boolean autoFlush = false;
+    // Auto-gravação agrupada: grava a cada "flushEvery" alterações e/ou no
+    // máximo "flushDelay" ms após a primeira alteração pendente.
+    private int flushEvery = 1;
+    private long flushDelay = 0;
+    private int pendingChanges = 0;
+    private ScheduledFuture<?> scheduledFlush;
+    // Lê e valida o arquivo após cada gravação
+    private boolean verifyOnSave = false;
+    // Gravação atômica (arquivo temporário + "move")
+    private boolean atomicSave = false;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.FILE;
     // Faz a leitura do arquivo em disco a cada solicitação de leitura. False
     // por default.
     private boolean autoLoad = false;
-    private String charset = "UTF-8";
+    // Critério usado pela auto-leitura para decidir se o arquivo deve ser
+    // lido novamente.
+    private ReloadPolicy reloadPolicy = ReloadPolicy.METADATA;
+    // Metadados do arquivo na ultima leitura
+    private volatile FileStamp stamp;
+    // Document lido em segundo plano (ReloadPolicy.WATCH), ainda não
+    // publicado para as leituras.
+    private final AtomicReference<Document> pending = new AtomicReference<Document>();
+    private FileWatcher watcher;
+    // Codificação usada na gravação. Lida do próprio arquivo (BOM ou
+    // declaração) a cada parse, até ser definida por setCharset.
+    private volatile String charset = "UTF-8";
+    private boolean charsetExplicit = false;
+    // Codificação informada no construtor para arquivos sem BOM e sem
+    // declaração.
+    private String charsetHint;
+    // Forma como o arquivo é entregue ao parser.
+    private LoadMode loadMode = LoadMode.STREAM;
+    // Índice de tags (opcional). Quando ativo as buscas por tag não percorrem
+    // a árvore inteira.
+    private boolean indexed = false;
+    private TagIndex index;
+    // Modo concorrente: leituras em paralelo (read lock) e alterações
+    // exclusivas (write lock). Desativado, nenhum lock é usado.
+    private volatile boolean concurrent = false;
+    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    // Forma como o XML é mantido em memória. Nos modos compactos "doc" é
+    // null e as leituras usam "compact".
+    private Storage storage = Storage.DOM;
+    private volatile CompactDocument compact;
+    private final AtomicReference<CompactDocument> pendingCompact = new AtomicReference<CompactDocument>();
+    // Medições das operações. Com XMLMetrics.NONE o relógio não é lido.
+    private volatile XMLMetrics metrics = defaultMetrics;
+    private static volatile XMLMetrics defaultMetrics = XMLMetrics.NONE;
 
     public static final String UTF_8 = "UTF-8";
     public static final String ISO_8859_1 = "ISO-8859-1";
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Quanto da gravação atômica deve ser forçado para o disco (fsync) antes
+     * de "save" retornar.
+     */
+    public enum FsyncPolicy {
+        /**
+         * Não força a gravação; o sistema operacional decide quando gravar.
+         * A substituição continua atômica para os leitores, mas uma queda do
+         * sistema pode perder a ultima gravação.
+         */
+        NONE,
+        /**
+         * Força a gravação do conteúdo do arquivo antes da substituição.
+         * Padrão.
+         */
+        FILE,
+        /**
+         * Força a gravação do conteúdo e também do diretório, garantindo que
+         * a substituição (rename) sobreviva a uma queda do sistema.
+         */
+        FILE_AND_DIRECTORY
+    }
+
+    /**
+     * Critérios da auto-leitura (ver {@link #setAutoLoad(boolean)}) para
+     * decidir quando o arquivo deve ser lido novamente.
+     */
+    public enum ReloadPolicy {
+        /**
+         * Lê e faz o parse do arquivo a cada leitura, mesmo sem alterações.
+         */
+        ALWAYS,
+        /**
+         * Lê o arquivo novamente apenas quando o tamanho ou a data de
+         * modificação mudarem. Padrão.
+         */
+        METADATA,
+        /**
+         * Como METADATA, mas quando os metadados não mudam compara também o
+         * CRC32 do conteúdo. Detecta alterações que preservam tamanho e data,
+         * ao custo de ler o arquivo (sem fazer o parse) a cada leitura.
+         */
+        CHECKSUM,
+        /**
+         * Observa o arquivo com um WatchService. O parse é feito em segundo
+         * plano a cada alteração e o novo Document é publicado atomicamente
+         * para a próxima leitura, que não acessa o disco.
+         */
+        WATCH
+    }
+
+    /**
+     * Modos de leitura do arquivo XML. Em ambos os modos os bytes do arquivo
+     * são entregues diretamente ao parser, sem cópias intermediárias em
+     * String, e a codificação é definida pela declaração do XML.
+     */
+    public enum LoadMode {
+        /**
+         * Lê o arquivo através de um InputStream bufferizado. Modo padrão.
+         */
+        STREAM,
+        /**
+         * Mapeia o arquivo em memória (FileChannel) e o entrega ao parser.
+         * Indicado para arquivos grandes, pois o conteúdo fica fora do heap.
+         */
+        MAPPED
+    }
+
+    /**
+     * Forma como o XML lido do arquivo é mantido em memória.
+     */
+    public enum Storage {
+        /**
+         * Árvore DOM completa, com leitura e alteração. Padrão.
+         */
+        DOM,
+        /**
+         * Representação compacta e somente leitura: os elementos ficam em
+         * arrays de int, os nomes das tags são compartilhados ("intern") e
+         * todo o texto fica em um único buffer de chars. Ocupa uma fração da
+         * memória do DOM, indicado para tabelas de referência mantidas em
+         * memória e consultadas com getValue, getValues, getAttributes,
+         * getMapChilds, getNumOccur, extractFirst, etc.
+         *
+         * As alterações (setValue, createTag, removeTag, save, etc.) e as
+         * consultas XPath lançam XMLException. Comentários e instruções de
+         * processamento são descartados.
+         */
+        COMPACT,
+        /**
+         * Como COMPACT, mas o buffer de texto fica fora do heap (ByteBuffer
+         * direto), reduzindo o trabalho do garbage collector com tabelas
+         * grandes.
+         */
+        COMPACT_DIRECT
+    }
+
     /**
      * Construtor recebe um File do arquivo a ser lido.
      *
      * @param file File do arquivo a ser lido.
      */
     public XMLUtils(File file) {
+        this(file, LoadMode.STREAM);
+    }
+
+    /**
+     * Construtor recebe um File do arquivo a ser lido e o modo de leitura a
+     * ser utilizado.
+     *
+     * @param file File do arquivo a ser lido.
+     * @param loadMode Modo de leitura do arquivo.
+     * @see LoadMode
+     */
+    public XMLUtils(File file, LoadMode loadMode) {
+        this(file, loadMode, Storage.DOM);
+    }
+
+    /**
+     * Construtor recebe um File do arquivo a ser lido, o modo de leitura e a
+     * forma como o XML será mantido em memória.
+     *
+     * @param file File do arquivo a ser lido.
+     * @param loadMode Modo de leitura do arquivo.
+     * @param storage Forma como o XML é mantido em memória.
+     * @see Storage
+     */
+    public XMLUtils(File file, LoadMode loadMode, Storage storage) {
+        this(file, loadMode, storage, null);
+    }
+
+    /**
+     * Construtor recebe um File do arquivo a ser lido e a sua codificação.
+     * A codificação só é usada na leitura quando o arquivo não tem BOM nem
+     * declaração XML (que prevalecem), e é mantida na gravação.
+     *
+     * @param file File do arquivo a ser lido.
+     * @param charset Codificação do arquivo (ex: {@link #ISO_8859_1}).
+     */
+    public XMLUtils(File file, String charset) {
+        this(file, LoadMode.STREAM, Storage.DOM, charset);
+    }
+
+    /**
+     * Construtor recebe um File do arquivo a ser lido, o modo de leitura, a
+     * forma como o XML será mantido em memória e a codificação do arquivo.
+     *
+     * @param file File do arquivo a ser lido.
+     * @param loadMode Modo de leitura do arquivo.
+     * @param storage Forma como o XML é mantido em memória.
+     * @param charset Codificação do arquivo quando não há BOM nem declaração
+     * XML (null para UTF-8).
+     * @see #XMLUtils(java.io.File, java.lang.String)
+     */
+    public XMLUtils(File file, LoadMode loadMode, Storage storage, String charset) {
         if (file != null && file.exists()) {
+            if (charset != null && !XMLEncoding.isSupported(charset)) {
+                throw new XMLException("Codificação não suportada: \"" + charset + "\".");
+            }
             this.file = file;
+            this.loadMode = (loadMode != null ? loadMode : LoadMode.STREAM);
+            this.storage = (storage != null ? storage : Storage.DOM);
+            this.charsetHint = charset;
             readXML();
         } else {
             throw new XMLException("O arquivo \"" + file.getAbsolutePath() + "\" não existe.");
@@ -95,44 +316,55 @@ public class XMLUtils {
         this.file = null;
     }
 
+    /**
+     * Construtor usado pelo {@link DocumentCache}: o Document (uma cópia
+     * própria) já foi lido do arquivo.
+     */
+    XMLUtils(File file, Document document, FileStamp stamp, String charset) {
+        this.file = file;
+        this.doc = document;
+        this.stamp = stamp;
+        this.charset = charset;
+    }
+
+    /**
+     * Retorna um XMLUtils do arquivo usando o cache compartilhado de
+     * documentos: o arquivo só é lido novamente se tiver mudado no disco. O
+     * documento é uma cópia própria, que pode ser alterada e gravada.
+     *
+     * @param file Arquivo XML.
+     * @return XMLUtils ligado ao arquivo.
+     * @see DocumentCache
+     */
+    public static XMLUtils cached(File file) {
+        return DocumentCache.getDefault().open(file);
+    }
+
     private void readXML() {
-        String str = "";
-        StringBuilder sb;
-        FileInputStream fis = null;
-        InputStreamReader isr = null;
-        BufferedReader reader = null;
         if (file != null) {
             if (file.exists()) {
+                FileStamp current;
                 try {
-                    sb = new StringBuilder();
-                    fis = new FileInputStream(file);
-                    isr = new InputStreamReader(fis, Charset.forName(this.charset));
-                    reader = new BufferedReader(isr);
-                    while ((str = reader.readLine()) != null) {
-                        sb.append(str);
-                    }
-                    str = null;
-                    fis.close();
-                    reader.close();
-                    fis = null;
-                    isr.close();
-                    isr = null;
-                    reader = null;
-
-                    //faz o parse do arquivo e cria o Document
-                    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-                    DocumentBuilder db;
-                    db = dbf.newDocumentBuilder();
-                    doc = db.parse(new InputSource(new StringReader(sb.toString())));
-                } catch (SAXException | ParserConfigurationException ex) {
-                    ex.printStackTrace();
-                    throw new XMLException("Erro ao fazer o parse do arquivo XML.", ex);
+                    current = FileStamp.read(file);
                 } catch (IOException ex) {
                     ex.printStackTrace();
                     throw new XMLException("Erro de leitura do arquivo XML.", ex);
-                } catch (IllegalArgumentException ex) {
-                    ex.printStackTrace();
-                    throw new XMLException("Parametro informado é nulo.", ex);
+                }
+                if (storage != Storage.DOM) {
+                    // Imutável, basta publicar
+                    compact = parseCompact(current);
+                    stamp = current;
+                    return;
+                }
+                Document parsed = parse(current);
+                Lock lock = writeLock();
+                lock.lock();
+                try {
+                    doc = parsed;
+                    stamp = current;
+                    reindex();
+                } finally {
+                    lock.unlock();
                 }
             } else {
                 throw new XMLException("Arquivo informado não existe: [" + file.getAbsolutePath() + "]");
@@ -142,6 +374,341 @@ public class XMLUtils {
         }
     }
 
+    /**
+     * Faz o parse do arquivo para um Document. Com
+     * {@link ReloadPolicy#CHECKSUM} o CRC32 do conteúdo é calculado durante a
+     * própria leitura e guardado em "current".
+     *
+     * @param current Metadados do arquivo lidos antes do parse.
+     * @return Document do arquivo.
+     */
+    private Document parse(FileStamp current) {
+        return parse(current, source -> XMLFactories.documentBuilder().parse(source));
+    }
+
+    /**
+     * Faz o parse do arquivo para a representação compacta, sem criar a
+     * árvore DOM.
+     */
+    private CompactDocument parseCompact(FileStamp current) {
+        return parse(current, source -> CompactDocument.parse(source, storage == Storage.COMPACT_DIRECT));
+    }
+
+    private interface Parser<T> {
+
+        T parse(InputSource source) throws SAXException, IOException;
+    }
+
+    private <T> T parse(FileStamp current, Parser<T> parser) {
+        long start = begin();
+        InputStream in = null;
+        try {
+            in = openStream();
+            // Detecta a codificação pelos primeiros bytes (BOM ou declaração)
+            // sem consumi-los; o parser continua recebendo os bytes.
+            String detected = XMLEncoding.detect(in);
+            CRC32 crc = null;
+            if (reloadPolicy == ReloadPolicy.CHECKSUM) {
+                crc = new CRC32();
+                in = new CheckedInputStream(in, crc);
+            }
+            // Entrega os bytes diretamente ao parser, assim a codificação é
+            // definida pela declaração do próprio XML. Sem BOM e sem
+            // declaração vale a codificação informada no construtor.
+            InputSource source = new InputSource(in);
+            source.setSystemId(file.toURI().toString());
+            if (detected == null && charsetHint != null) {
+                source.setEncoding(charsetHint);
+            }
+            T parsed = parser.parse(source);
+            if (!charsetExplicit) {
+                // A gravação mantém a codificação original do arquivo
+                charset = detected != null ? detected : (charsetHint != null ? charsetHint : UTF_8);
+            }
+            if (crc != null) {
+                // O parser lê o arquivo até o fim (e o fecha), então o CRC32
+                // já cobre todo o conteúdo.
+                current.checksum = crc.getValue();
+            }
+            end(XMLMetrics.Operation.PARSE, start, current.size);
+            return parsed;
+        } catch (SAXException ex) {
+            ex.printStackTrace();
+            throw new XMLException("Erro ao fazer o parse do arquivo XML.", ex);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            throw new XMLException("Erro de leitura do arquivo XML.", ex);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Executado pelas leituras quando a auto-leitura está ativa. Lê o arquivo
+     * novamente conforme a {@link ReloadPolicy} configurada.
+     */
+    private void reload() {
+        if (file == null) {
+            readXML();
+            return;
+        }
+        switch (reloadPolicy) {
+            case ALWAYS:
+                readXML();
+                metrics.reloaded();
+                break;
+            case WATCH:
+                CompactDocument loadedCompact = pendingCompact.getAndSet(null);
+                if (loadedCompact != null) {
+                    compact = loadedCompact;
+                    metrics.reloaded();
+                }
+                Document loaded = pending.getAndSet(null);
+                if (loaded != null) {
+                    metrics.reloaded();
+                    Lock lock = writeLock();
+                    lock.lock();
+                    try {
+                        doc = loaded;
+                        reindex();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                break;
+            default:
+                if (isModified()) {
+                    readXML();
+                    metrics.reloaded();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Verifica se o arquivo no disco mudou desde a ultima leitura.
+     */
+    private boolean isModified() {
+        FileStamp last = stamp;
+        try {
+            FileStamp current = FileStamp.read(file);
+            if (!current.sameMetadata(last)) {
+                return true;
+            }
+            if (reloadPolicy == ReloadPolicy.CHECKSUM) {
+                return last.checksum == FileStamp.NO_CHECKSUM || last.checksum != FileStamp.checksum(file);
+            }
+            return false;
+        } catch (IOException ex) {
+            // Arquivo inacessível no momento; a leitura informa o erro.
+            return true;
+        }
+    }
+
+    /**
+     * Executado pelo WatchService (em segundo plano) a cada alteração do
+     * arquivo. O Document só é publicado se o parse for concluído com
+     * sucesso.
+     */
+    private void loadInBackground() {
+        try {
+            FileStamp current = FileStamp.read(file);
+            if (current.sameMetadata(stamp)) {
+                return;
+            }
+            if (storage != Storage.DOM) {
+                CompactDocument loaded = parseCompact(current);
+                stamp = current;
+                pendingCompact.set(loaded);
+                return;
+            }
+            Document loaded = parse(current);
+            stamp = current;
+            pending.set(loaded);
+        } catch (IOException | XMLException ex) {
+            // Arquivo possivelmente em gravação; uma nova notificação virá.
+            ex.printStackTrace();
+        }
+    }
+
+    private void startWatcher() {
+        if (watcher == null && file != null) {
+            try {
+                watcher = new FileWatcher(file, this::loadInBackground);
+            } catch (IOException ex) {
+                throw new XMLException("Erro ao observar o arquivo \"" + file.getAbsolutePath() + "\".", ex);
+            }
+        }
+    }
+
+    private void stopWatcher() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            watcher = null;
+        }
+        pending.set(null);
+        pendingCompact.set(null);
+    }
+
+    /**
+     * Abre o arquivo para leitura conforme o modo de leitura configurado.
+     *
+     * @return InputStream posicionado no inicio do arquivo.
+     * @throws IOException
+     */
+    private InputStream openStream() throws IOException {
+        if (loadMode == LoadMode.MAPPED) {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                return new MappedFileInputStream(channel);
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+        return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+    }
+
+    /**
+     * Reconstrói o índice de tags, caso esteja ativo. No modo concorrente o
+     * índice está sempre ativo e o Document é antes expandido por completo.
+     */
+    private void reindex() {
+        if (concurrent && doc != null) {
+            expand(doc);
+        }
+        index = ((indexed || concurrent) && doc != null) ? new TagIndex(doc) : null;
+    }
+
+    /**
+     * Percorre todos os nós do documento lendo nomes, valores e atributos.
+     * O parser padrão do JDK cria os nós sob demanda ("deferred node
+     * expansion"), ou seja, a primeira leitura de um nó altera a árvore. Após
+     * a expansão completa as leituras não alteram mais nada e podem ser
+     * feitas por várias threads ao mesmo tempo.
+     */
+    static void expand(Node root) {
+        Node node = root;
+        while (node != null) {
+            node.getNodeName();
+            node.getNodeValue();
+            NamedNodeMap attrs = node.getAttributes();
+            if (attrs != null) {
+                for (int i = 0; i < attrs.getLength(); i++) {
+                    attrs.item(i).getNodeValue();
+                }
+            }
+            Node next = node.getFirstChild();
+            if (next == null) {
+                while (node != root && node.getNextSibling() == null) {
+                    node = node.getParentNode();
+                }
+                if (node == root) {
+                    break;
+                }
+                next = node.getNextSibling();
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * Lock das leituras: o read lock no modo concorrente, senão um lock vazio.
+     */
+    private Lock readLock() {
+        return concurrent ? rwLock.readLock() : NoLock.INSTANCE;
+    }
+
+    /**
+     * Lock das alterações: o write lock no modo concorrente, senão um lock
+     * vazio.
+     */
+    private Lock writeLock() {
+        return concurrent ? rwLock.writeLock() : NoLock.INSTANCE;
+    }
+
+    /**
+     * Inicio de uma operação medida. Sem medições o relógio não é lido.
+     */
+    private long begin() {
+        return metrics != XMLMetrics.NONE ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Fim de uma operação iniciada com {@link #begin()}.
+     */
+    private void end(XMLMetrics.Operation operation, long start, long bytes) {
+        XMLMetrics m = metrics;
+        if (start != 0 && m != XMLMetrics.NONE) {
+            m.record(operation, System.nanoTime() - start, bytes);
+        }
+    }
+
+    /**
+     * Retorna todas as ocorrências da tag no documento (inclusive a raiz),
+     * usando o índice quando ativo. O índice não tem entrada para o curinga
+     * "*", que é sempre buscado no DOM.
+     */
+    private NodeList elements(String tag) {
+        if (index != null && !"*".equals(tag)) {
+            return index.list(tag, false);
+        }
+        return doc.getElementsByTagName(tag);
+    }
+
+    /**
+     * Retorna as ocorrências da tag abaixo da raiz do documento, usando o
+     * índice quando ativo (exceto para o curinga "*").
+     */
+    private NodeList descendants(String tag) {
+        if (index != null && !"*".equals(tag)) {
+            return index.list(tag, true);
+        }
+        return doc.getDocumentElement().getElementsByTagName(tag);
+    }
+
+    /**
+     * Lança XMLException nos modos compactos, que são somente leitura.
+     */
+    private void requireDom(String operation) {
+        if (storage != Storage.DOM) {
+            throw new XMLException("Operação \"" + operation + "\" não suportada com Storage." + storage + " (somente leitura).");
+        }
+    }
+
+    /**
+     * Capacidade inicial de um HashMap para "n" elementos sem rehash.
+     */
+    private static int capacity(int n) {
+        return (int) (n / 0.75f) + 1;
+    }
+
+    private static String[] attributeNames(CompactDocument c, int e) {
+        String[] attributes = new String[c.attributeCount(e)];
+        for (int i = 0; i < attributes.length; i++) {
+            attributes[i] = c.attributeName(e, i);
+        }
+        return attributes;
+    }
+
+    private static String[] attributeValues(CompactDocument c, int e) {
+        String[] values = new String[c.attributeCount(e)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = c.attributeValue(e, i);
+        }
+        return values;
+    }
+
     /**
      * Retorna o valor que está entre a tag informada. Retorna apenas o valor da
      * primeira ocorrência da tag, para retornar os valores de todas as
@@ -154,14 +721,27 @@ public class XMLUtils {
      */
     public String getValue(String tag) {
         if (autoLoad) {
-            readXML();
+            reload();
         }
         
-        NodeList nodeList = doc.getElementsByTagName(tag);
-        if(nodeList.getLength() > 0){
-            return nodeList.item(0).getTextContent();
-        } else {
-            return null;
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            CompactDocument c = compact;
+            if (c != null) {
+                int[] list = c.elements(tag);
+                return list.length > 0 ? c.text(list[0]) : null;
+            }
+            NodeList nodeList = elements(tag);
+            if(nodeList.getLength() > 0){
+                return nodeList.item(0).getTextContent();
+            } else {
+                return null;
+            }
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
@@ -176,17 +756,33 @@ public class XMLUtils {
      */
     public String[] getValues(String tag) throws Exception {
         if (autoLoad) {
-            readXML();
+            reload();
         }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
         try {
-            int numTags = doc.getElementsByTagName(tag).getLength();
+            CompactDocument c = compact;
+            if (c != null) {
+                int[] list = c.elements(tag);
+                String[] values = new String[list.length];
+                for (int i = 0; i < list.length; i++) {
+                    values[i] = c.text(list[i]);
+                }
+                return values;
+            }
+            NodeList nodeList = elements(tag);
+            int numTags = nodeList.getLength();
             String[] values = new String[numTags];
             for (int i = 0; i < numTags; i++) {
-                values[i] = doc.getElementsByTagName(tag).item(i).getTextContent();
+                values[i] = nodeList.item(i).getTextContent();
             }
             return values;
         } catch (Exception ex) {
             throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
@@ -203,20 +799,31 @@ public class XMLUtils {
     public String[] getAttributes(String tag) throws Exception {
         if (autoLoad) {
             try {
-                readXML();
+                reload();
             } catch (Exception ex) {
                 throw new Exception(ex);
             }
         }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
         try {
-            int numAttr = doc.getElementsByTagName(tag).item(0).getAttributes().getLength();
+            CompactDocument c = compact;
+            if (c != null) {
+                return attributeNames(c, c.element(tag, 0));
+            }
+            NamedNodeMap attrs = elements(tag).item(0).getAttributes();
+            int numAttr = attrs.getLength();
             String[] attributes = new String[numAttr];
             for (int i = 0; i < numAttr; i++) {
-                attributes[i] = doc.getElementsByTagName(tag).item(0).getAttributes().item(i).getNodeName();
+                attributes[i] = attrs.item(i).getNodeName();
             }
             return attributes;
         } catch (Exception ex) {
             throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
@@ -241,20 +848,31 @@ public class XMLUtils {
     public String[] getAttributes(String tag, int index) throws Exception {
         if (autoLoad) {
             try {
-                readXML();
+                reload();
             } catch (Exception ex) {
                 throw new Exception(ex);
             }
         }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
         try {
-            int numAttr = doc.getElementsByTagName(tag).item(index).getAttributes().getLength();
+            CompactDocument c = compact;
+            if (c != null) {
+                return attributeNames(c, c.element(tag, index));
+            }
+            NamedNodeMap attrs = elements(tag).item(index).getAttributes();
+            int numAttr = attrs.getLength();
             String[] attributes = new String[numAttr];
             for (int i = 0; i < numAttr; i++) {
-                attributes[i] = doc.getElementsByTagName(tag).item(index).getAttributes().item(i).getNodeName();
+                attributes[i] = attrs.item(i).getNodeName();
             }
             return attributes;
         } catch (Exception ex) {
             throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
@@ -271,20 +889,31 @@ public class XMLUtils {
     public String[] getAttributeValues(String tag) throws Exception {
         if (autoLoad) {
             try {
-                readXML();
+                reload();
             } catch (Exception ex) {
                 throw new Exception(ex);
             }
         }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
         try {
-            int numAttr = doc.getElementsByTagName(tag).item(0).getAttributes().getLength();
+            CompactDocument c = compact;
+            if (c != null) {
+                return attributeValues(c, c.element(tag, 0));
+            }
+            NamedNodeMap attrs = elements(tag).item(0).getAttributes();
+            int numAttr = attrs.getLength();
             String[] values = new String[numAttr];
             for (int i = 0; i < numAttr; i++) {
-                values[i] = doc.getElementsByTagName(tag).item(0).getAttributes().item(i).getNodeValue();
+                values[i] = attrs.item(i).getNodeValue();
             }
             return values;
         } catch (Exception ex) {
             throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
@@ -304,20 +933,31 @@ public class XMLUtils {
     public String[] getAttributeValues(String tag, int index) throws Exception {
         if (autoLoad) {
             try {
-                readXML();
+                reload();
             } catch (Exception ex) {
                 throw new Exception(ex);
             }
         }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
         try {
-            int numAttr = doc.getElementsByTagName(tag).item(index).getAttributes().getLength();
+            CompactDocument c = compact;
+            if (c != null) {
+                return attributeValues(c, c.element(tag, index));
+            }
+            NamedNodeMap attrs = elements(tag).item(index).getAttributes();
+            int numAttr = attrs.getLength();
             String[] values = new String[numAttr];
             for (int i = 0; i < numAttr; i++) {
-                values[i] = doc.getElementsByTagName(tag).item(index).getAttributes().item(i).getNodeValue();
+                values[i] = attrs.item(i).getNodeValue();
             }
             return values;
         } catch (Exception ex) {
             throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
@@ -344,6 +984,11 @@ public class XMLUtils {
      * map.get("funcao"); //Retorna "Serviços Gerais"
      * }</pre>
      *
+     * Apenas os elementos filhos são considerados (texto, comentários e
+     * CDATA são ignorados) e o mapa mantém a ordem em que aparecem no XML.
+     * Para percorrer os filhos sem criar o mapa use
+     * {@link #forEachChild(String, BiConsumer)}.
+     *
      * @param tag Nome da tag.
      * @return Retorna um {@code HashMap<String, String>} com os nomes e os
      * valores das tags filhas da tag informada.
@@ -352,30 +997,38 @@ public class XMLUtils {
     public HashMap<String, String> getMapChilds(String tag) throws Exception {
         if (autoLoad) {
             try {
-                readXML();
+                reload();
             } catch (Exception ex) {
                 throw new Exception(ex);
             }
         }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
         try {
-            int count = 0;
-            NodeList nodeList = doc.getElementsByTagName(tag).item(0).getChildNodes();
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                if (!"#text".equals(nodeList.item(i).getNodeName()) && !"#comment".equals(nodeList.item(i).getNodeName())) {
-                    count++;
+            CompactDocument c = compact;
+            if (c != null) {
+                int e = c.element(tag, 0);
+                HashMap<String, String> map = new LinkedHashMap<String, String>();
+                for (int child = e + 1; child < c.end(e); child = c.end(child)) {
+                    map.put(c.name(child), c.text(child));
                 }
+                return map;
             }
-            HashMap<String, String> map = new HashMap<String, String>();
-            int a = 0;
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                if (!"#text".equals(nodeList.item(i).getNodeName()) && !"#comment".equals(nodeList.item(i).getNodeName())) {
-                    map.put(nodeList.item(i).getNodeName(), nodeList.item(i).getTextContent());
-                    a++;
-                }
+            Node parent = elements(tag).item(0);
+            HashMap<String, String> map = new LinkedHashMap<String, String>();
+            // Percorre os irmãos diretamente: o "item(i)" da lista de filhos
+            // usa um cache interno do DOM, que não pode ser compartilhado
+            // entre threads.
+            for (Node child = firstElement(parent.getFirstChild()); child != null; child = firstElement(child.getNextSibling())) {
+                map.put(child.getNodeName(), child.getTextContent());
             }
             return map;
         } catch (Exception ex) {
             throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
@@ -407,28 +1060,7 @@ public class XMLUtils {
      * @exception Exception
      */
     public HashMap<String, String> getMapAttributes(String tag) throws Exception {
-        if (autoLoad) {
-            try {
-                readXML();
-            } catch (Exception ex) {
-                throw new Exception(ex);
-            }
-        }
-        try {
-            HashMap<String, String> map = new HashMap<String, String>();
-            String[] names = XMLUtils.this.getAttributes(tag);
-            String[] values = XMLUtils.this.getAttributeValues(tag);
-            if (names.length == values.length) {
-                for (int i = 0; i < names.length; i++) {
-                    map.put(names[i], values[i]);
-                }
-            } else {
-                throw new Exception("Lista de \"atributos\" difere da lista de \"valores de atributos\".");
-            }
-            return map;
-        } catch (Exception ex) {
-            throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
-        }
+        return getMapAttributes(tag, 0);
     }
 
     /**
@@ -464,64 +1096,280 @@ public class XMLUtils {
     public HashMap<String, String> getMapAttributes(String tag, int index) throws Exception {
         if (autoLoad) {
             try {
-                readXML();
+                reload();
             } catch (Exception ex) {
                 throw new Exception(ex);
             }
         }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
         try {
-            HashMap<String, String> map = new HashMap<String, String>();
-            String[] names = getAttributes(tag, index);
-            String[] values = getAttributeValues(tag, index);
-            if (names.length == values.length) {
-                for (int i = 0; i < names.length; i++) {
-                    map.put(names[i], values[i]);
+            CompactDocument c = compact;
+            if (c != null) {
+                int e = c.element(tag, index);
+                int numAttr = c.attributeCount(e);
+                HashMap<String, String> map = new LinkedHashMap<String, String>(capacity(numAttr));
+                for (int i = 0; i < numAttr; i++) {
+                    map.put(c.attributeName(e, i), c.attributeValue(e, i));
                 }
-            } else {
-                throw new Exception("Lista de \"atributos\" difere da lista de \"valores de atributos\".");
+                return map;
+            }
+            NamedNodeMap attrs = elements(tag).item(index).getAttributes();
+            int numAttr = attrs.getLength();
+            HashMap<String, String> map = new LinkedHashMap<String, String>(capacity(numAttr));
+            for (int i = 0; i < numAttr; i++) {
+                Node attr = attrs.item(i);
+                map.put(attr.getNodeName(), attr.getNodeValue());
             }
             return map;
         } catch (Exception ex) {
             throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
     /**
-     * Use este método para setar o valor de alguma tag. Basta informar a tag a
-     * qual deseja alterar e o seu novo valor. Será alterada apenas o valor da
-     * primeira ocorrência da tag, se houver outras, serão ignoradas.
+     * Entrega ao visitor o valor de cada ocorrência da tag, em ordem de
+     * documento, sem criar nenhum array ou coleção. Equivale a percorrer o
+     * resultado de {@link #getValues(String)}.
      *
      * @param tag Nome da tag.
-     * @param value Valor da tag
+     * @param visitor Recebe o valor de cada ocorrência.
      * @throws Exception
-     * @see #setValues(tag, value, index)
      */
-    public void setValue(String tag, String value) throws Exception {
+    public void forEachValue(String tag, Consumer<String> visitor) throws Exception {
         if (autoLoad) {
-            try {
-                readXML();
-            } catch (Exception ex) {
-                throw new Exception(ex);
-            }
+            reload();
         }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
         try {
-            doc.getDocumentElement().getElementsByTagName(tag).item(0).setTextContent(value);
-            if (autoFlush) {
-                save();
+            CompactDocument c = compact;
+            if (c != null) {
+                for (int e : c.elements(tag)) {
+                    visitor.accept(c.text(e));
+                }
+                return;
             }
-        } catch (Exception ex) {
-            throw new Exception("Erro ao setar o valor da tag. A tag [" + tag + "] especificada não existe no XML.", ex);
+            NodeList nodeList = elements(tag);
+            int numTags = nodeList.getLength();
+            for (int i = 0; i < numTags; i++) {
+                visitor.accept(nodeList.item(i).getTextContent());
+            }
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
     /**
-     * Seta os valores de todas as ocorrências da tag informada. Para cada
-     * ocorrência pode-se ter um valor diferente. Isso é garantido pelo
-     * parametro "index" que especifica qual ocorrência será alterada. Os
-     * valores das tags serão alterados conforme as tags forem sendo
-     * encontradas, do inicio do arquivo até o final.<br/> <b>EX:</b> se o
-     * "indice" for 2 a terceira ocorrência da tag será alterada, pois os
-     * valores começam em 0 (zero). <br/><br/> Para saber quantas ocorrências
+     * Entrega ao visitor cada ocorrência da tag (inclusive a raiz), em ordem
+     * de documento, usando o índice quando ativo. O visitor é chamado com o
+     * lock de leitura adquirido e não deve alterar o elemento nem guardá-lo
+     * para depois. Nos modos compactos cada ocorrência é entregue como uma
+     * cópia DOM só da sua sub-árvore.
+     *
+     * @param tag Nome da tag.
+     * @param visitor Recebe cada ocorrência.
+     * @throws Exception
+     */
+    public void forEachElement(String tag, Consumer<Element> visitor) throws Exception {
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            CompactDocument c = compact;
+            if (c != null) {
+                for (int e : c.elements(tag)) {
+                    visitor.accept(c.toDocument(e).getDocumentElement());
+                }
+                return;
+            }
+            NodeList nodeList = elements(tag);
+            int numTags = nodeList.getLength();
+            for (int i = 0; i < numTags; i++) {
+                visitor.accept((Element) nodeList.item(i));
+            }
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
+        }
+    }
+
+    /**
+     * Entrega ao visitor a ocorrência "index" da tag (inclusive a raiz),
+     * nas mesmas condições de {@link #forEachElement(String, Consumer)}.
+     *
+     * @param tag Nome da tag.
+     * @param index Indice da tag.
+     * @param visitor Recebe a ocorrência.
+     * @return false se a ocorrência da tag não existir (o visitor não é
+     * chamado).
+     * @throws Exception Erro na auto-leitura do arquivo.
+     */
+    public boolean visitElement(String tag, int index, Consumer<Element> visitor) throws Exception {
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            Element element;
+            CompactDocument c = compact;
+            if (c != null) {
+                int[] list = c.elements(tag);
+                element = (index >= 0 && index < list.length) ? c.toDocument(list[index]).getDocumentElement() : null;
+            } else {
+                element = (Element) elements(tag).item(index);
+            }
+            if (element == null) {
+                return false;
+            }
+            visitor.accept(element);
+            return true;
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
+        }
+    }
+
+    /**
+     * Entrega ao visitor o nome e o valor de cada tag filha (apenas
+     * elementos) da primeira ocorrência da tag, em ordem de documento, sem
+     * criar nenhuma coleção. Diferente de {@link #getMapChilds(String)},
+     * tags filhas repetidas são todas entregues.
+     *
+     * @param tag Nome da tag.
+     * @param visitor Recebe o nome e o valor de cada tag filha.
+     * @throws Exception Se a tag não existir.
+     */
+    public void forEachChild(String tag, BiConsumer<String, String> visitor) throws Exception {
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            CompactDocument c = compact;
+            if (c != null) {
+                int e = c.element(tag, 0);
+                for (int child = e + 1; child < c.end(e); child = c.end(child)) {
+                    visitor.accept(c.name(child), c.text(child));
+                }
+                return;
+            }
+            Node parent = elements(tag).item(0);
+            if (parent == null) {
+                throw new Exception("A tag [" + tag + "] especificada não existe no XML.");
+            }
+            for (Node child = firstElement(parent.getFirstChild()); child != null; child = firstElement(child.getNextSibling())) {
+                visitor.accept(child.getNodeName(), child.getTextContent());
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
+        }
+    }
+
+    /**
+     * Entrega ao visitor o nome e o valor de cada atributo da ocorrência
+     * "index" da tag, sem criar nenhuma coleção.
+     *
+     * @param tag Nome da tag.
+     * @param index Indice da tag.
+     * @param visitor Recebe o nome e o valor de cada atributo.
+     * @throws Exception Se a ocorrência da tag não existir.
+     */
+    public void forEachAttribute(String tag, int index, BiConsumer<String, String> visitor) throws Exception {
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            CompactDocument c = compact;
+            if (c != null) {
+                int e = c.element(tag, index);
+                for (int i = 0; i < c.attributeCount(e); i++) {
+                    visitor.accept(c.attributeName(e, i), c.attributeValue(e, i));
+                }
+                return;
+            }
+            Node node = elements(tag).item(index);
+            if (node == null) {
+                throw new Exception("A tag [" + tag + "] especificada não existe no XML.");
+            }
+            NamedNodeMap attrs = node.getAttributes();
+            int numAttr = attrs.getLength();
+            for (int i = 0; i < numAttr; i++) {
+                Node attr = attrs.item(i);
+                visitor.accept(attr.getNodeName(), attr.getNodeValue());
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            throw new Exception("A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
+        }
+    }
+
+    /**
+     * Use este método para setar o valor de alguma tag. Basta informar a tag a
+     * qual deseja alterar e o seu novo valor. Será alterada apenas o valor da
+     * primeira ocorrência da tag, se houver outras, serão ignoradas.
+     *
+     * @param tag Nome da tag.
+     * @param value Valor da tag
+     * @throws Exception
+     * @see #setValues(tag, value, index)
+     */
+    public synchronized void setValue(String tag, String value) throws Exception {
+        requireDom("setValue");
+        if (autoLoad) {
+            try {
+                reload();
+            } catch (Exception ex) {
+                throw new Exception(ex);
+            }
+        }
+        long start = begin();
+        Lock lock = writeLock();
+        lock.lock();
+        try {
+            Node node = descendants(tag).item(0);
+            if (index != null) {
+                index.removeDescendants(node);
+            }
+            node.setTextContent(value);
+        } catch (Exception ex) {
+            throw new Exception("Erro ao setar o valor da tag. A tag [" + tag + "] especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.MUTATE, start, 0);
+        }
+        changed();
+    }
+
+    /**
+     * Seta os valores de todas as ocorrências da tag informada. Para cada
+     * ocorrência pode-se ter um valor diferente. Isso é garantido pelo
+     * parametro "index" que especifica qual ocorrência será alterada. Os
+     * valores das tags serão alterados conforme as tags forem sendo
+     * encontradas, do inicio do arquivo até o final.<br/> <b>EX:</b> se o
+     * "indice" for 2 a terceira ocorrência da tag será alterada, pois os
+     * valores começam em 0 (zero). <br/><br/> Para saber quantas ocorrências
      * existem para alguma tag use <code>getNumOccur()</code>.
      *
      * @param tag Nome da tag.
@@ -530,23 +1378,258 @@ public class XMLUtils {
      * @throws Exception
      * @see #setValue(tag, value)
      */
-    public void setValues(String tag, String value, Integer index) throws Exception {
+    public synchronized void setValues(String tag, String value, Integer index) throws Exception {
+        requireDom("setValues");
+        long start = begin();
+        Lock lock = writeLock();
+        lock.lock();
         try {
-            NodeList nodeList = doc.getDocumentElement().getElementsByTagName(tag);
+            NodeList nodeList = descendants(tag);
             Integer numItems = nodeList.getLength();
             if (index > numItems || index == null || index < 0) {
                 throw new Exception("Indice informado ['" + index + "'] está fora da faixa ou nulo.");
             } else {
-                doc.getDocumentElement().getElementsByTagName(tag).item(index).setTextContent(value);
-                if (autoFlush) {
-                    save();
+                Node node = nodeList.item(index);
+                if (this.index != null) {
+                    this.index.removeDescendants(node);
                 }
+                node.setTextContent(value);
             }
         } catch (Exception ex) {
             throw new Exception("Erro ao setar o valor da tag. A tag [" + tag + "]  especificada não existe no XML.", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.MUTATE, start, 0);
+        }
+        changed();
+    }
+
+    /**
+     * Retorna o valor (conteúdo texto) do primeiro nó selecionado pela
+     * consulta XPath. O nó pode ser um elemento, atributo ou texto.
+     *
+     * @param query Consulta XPath pré-compilada.
+     * @return Retorna o valor do nó ou null se nenhum nó for selecionado.
+     * @see XPathQuery
+     * @see #getValueByXPath(String)
+     */
+    public String getValue(XPathQuery query) {
+        requireDom("getValue(XPathQuery)");
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            Node node = (Node) query.expression().evaluate(doc, XPathConstants.NODE);
+            return node != null ? node.getTextContent() : null;
+        } catch (XPathExpressionException ex) {
+            throw new XMLException("Erro ao avaliar a expressão XPath [" + query + "].", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
+        }
+    }
+
+    /**
+     * Retorna os valores de todos os nós selecionados pela consulta XPath, em
+     * ordem de documento.
+     *
+     * @param query Consulta XPath pré-compilada.
+     * @return Retorna um array com os valores dos nós (vazio se nenhum nó for
+     * selecionado).
+     * @see XPathQuery
+     * @see #getValuesByXPath(String)
+     */
+    public String[] getValues(XPathQuery query) {
+        requireDom("getValues(XPathQuery)");
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            NodeList nodeList = (NodeList) query.expression().evaluate(doc, XPathConstants.NODESET);
+            int numNodes = nodeList.getLength();
+            String[] values = new String[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                values[i] = nodeList.item(i).getTextContent();
+            }
+            return values;
+        } catch (XPathExpressionException ex) {
+            throw new XMLException("Erro ao avaliar a expressão XPath [" + query + "].", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
+    /**
+     * Altera o valor do primeiro nó selecionado pela consulta XPath.
+     *
+     * @param query Consulta XPath pré-compilada.
+     * @param value Novo valor do nó.
+     * @throws Exception Se nenhum nó for selecionado.
+     * @see XPathQuery
+     * @see #setValueByXPath(String, String)
+     */
+    public synchronized void setValue(XPathQuery query, String value) throws Exception {
+        requireDom("setValue(XPathQuery)");
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        Lock lock = writeLock();
+        lock.lock();
+        try {
+            Node node = (Node) query.expression().evaluate(doc, XPathConstants.NODE);
+            if (node == null) {
+                throw new Exception("Erro ao setar o valor. A expressão [" + query + "] não seleciona nenhum nó do XML.");
+            }
+            if (index != null) {
+                index.removeDescendants(node);
+            }
+            node.setTextContent(value);
+        } catch (XPathExpressionException ex) {
+            throw new XMLException("Erro ao avaliar a expressão XPath [" + query + "].", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.MUTATE, start, 0);
+        }
+        changed();
+    }
+
+    /**
+     * Mesmo que {@link #getValue(XPathQuery)}, usando o cache de expressões
+     * compiladas do {@link XPathQuery}.
+     *
+     * @param expression Expressão XPath.
+     * @return Retorna o valor do nó ou null se nenhum nó for selecionado.
+     */
+    public String getValueByXPath(String expression) {
+        return getValue(XPathQuery.compile(expression));
+    }
+
+    /**
+     * Mesmo que {@link #getValues(XPathQuery)}, usando o cache de expressões
+     * compiladas do {@link XPathQuery}.
+     *
+     * @param expression Expressão XPath.
+     * @return Retorna um array com os valores dos nós.
+     */
+    public String[] getValuesByXPath(String expression) {
+        return getValues(XPathQuery.compile(expression));
+    }
+
+    /**
+     * Mesmo que {@link #setValue(XPathQuery, String)}, usando o cache de
+     * expressões compiladas do {@link XPathQuery}.
+     *
+     * @param expression Expressão XPath.
+     * @param value Novo valor do nó.
+     * @throws Exception Se nenhum nó for selecionado.
+     */
+    public void setValueByXPath(String expression, String value) throws Exception {
+        setValue(XPathQuery.compile(expression), value);
+    }
+
+    /**
+     * Extrai o valor da primeira ocorrência de cada tag (ou caminho) do
+     * plano, percorrendo a árvore uma única vez e encerrando a busca assim
+     * que todas forem encontradas. Equivale a chamar "getValue" para cada
+     * tag, mas sem uma busca (e uma possível releitura do arquivo) por tag.
+     *
+     * @param plan Plano de extração.
+     * @return Mapa [chave, valor]. Chaves não encontradas não fazem parte do
+     * mapa.
+     * @see ExtractionPlan
+     */
+    public HashMap<String, String> extractFirst(ExtractionPlan plan) {
+        return extract(plan, true).first();
+    }
+
+    /**
+     * Extrai os valores de todas as ocorrências de cada tag (ou caminho) do
+     * plano, em ordem de documento, percorrendo a árvore uma única vez.
+     *
+     * @param plan Plano de extração.
+     * @return Mapa [chave, valores] com todas as chaves do plano (chaves não
+     * encontradas retornam um array vazio).
+     * @see ExtractionPlan
+     */
+    public HashMap<String, String[]> extractAll(ExtractionPlan plan) {
+        return extract(plan, false).all();
+    }
+
+    private ExtractionPlan.Result extract(ExtractionPlan plan, boolean firstOnly) {
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        ExtractionPlan.Result result = plan.result(firstOnly);
+        ExtractionPlan.Matcher matcher = plan.matcher();
+        CompactDocument c = compact;
+        if (c != null) {
+            c.extract(plan, result);
+            end(XMLMetrics.Operation.QUERY, start, 0);
+            return result;
+        }
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            Node root = doc.getDocumentElement();
+            Node node = root;
+            while (node != null) {
+                int[] matched = matcher.start(node.getNodeName());
+                if (matched != null) {
+                    for (int k : matched) {
+                        if (result.wants(k)) {
+                            String attr = plan.attribute(k);
+                            if (attr == null) {
+                                result.add(k, node.getTextContent());
+                            } else if (((Element) node).hasAttribute(attr)) {
+                                result.add(k, ((Element) node).getAttribute(attr));
+                            }
+                        }
+                    }
+                    if (result.done()) {
+                        break;
+                    }
+                }
+                // Próximo elemento em ordem de documento
+                Node next = firstElement(node.getFirstChild());
+                if (next == null) {
+                    matcher.end();
+                    while (node != root && (next = firstElement(node.getNextSibling())) == null) {
+                        node = node.getParentNode();
+                        matcher.end();
+                    }
+                    if (node == root) {
+                        break;
+                    }
+                }
+                node = next;
+            }
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Primeiro elemento a partir do nó informado (inclusive), entre ele e os
+     * irmãos seguintes.
+     */
+    private static Node firstElement(Node node) {
+        while (node != null && node.getNodeType() != Node.ELEMENT_NODE) {
+            node = node.getNextSibling();
+        }
+        return node;
+    }
+
     /**
      * Grava o arquivo que está sendo manipulado em memória (no caso de
      * AutoFlush ser false). O arquivo original será substituido.
@@ -586,14 +1669,40 @@ public class XMLUtils {
      * @throws IOException
      * @see #save()
      */
-    public void save(File file) throws FileNotFoundException, UnsupportedEncodingException, IOException {
-        try {
-            String xml = docToStr(doc);
-            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), this.charset));
-            writer.write(xml);
-            writer.flush();
-            writer.close();
-            writer = null;
+    public synchronized void save(File file) throws FileNotFoundException, UnsupportedEncodingException, IOException {
+        requireDom("save");
+        long start = begin();
+        CRC32 crc = new CRC32();
+        if (atomicSave) {
+            saveAtomic(file, crc);
+        } else {
+            saveDirect(file, crc);
+        }
+        end(XMLMetrics.Operation.WRITE, start, file.length());
+
+        // O Document em memória continua sendo a referência; o arquivo não é
+        // lido novamente, a não ser que a verificação esteja ativa.
+        if (verifyOnSave) {
+            verify(file);
+        }
+        if (this.file != null && file.getAbsoluteFile().equals(this.file.getAbsoluteFile())) {
+            // Evita que a auto-leitura leia novamente o que acabou de ser
+            // gravado.
+            FileStamp saved = FileStamp.read(file);
+            saved.checksum = crc.getValue();
+            stamp = saved;
+        }
+    }
+
+    /**
+     * Grava diretamente sobre o arquivo de destino.
+     */
+    private void saveDirect(File file, CRC32 crc) throws FileNotFoundException, UnsupportedEncodingException, IOException {
+        if (!Charset.isSupported(this.charset)) {
+            throw new UnsupportedEncodingException("Erro ao gravar \"" + file.getName() + "\". Codificação especificada não é valida. [" + this.charset + "]");
+        }
+        try (OutputStream out = new BufferedOutputStream(new CheckedOutputStream(new FileOutputStream(file), crc), BUFFER_SIZE)) {
+            docToStream(doc, out, true, XMLEncoding.isDefault(charset));
         } catch (FileNotFoundException ex) {
             throw new FileNotFoundException("Erro ao gravar \"" + file.getName() + "\". Arquivo não encontrado. [" + ex.getMessage() + "]");
         } catch (UnsupportedEncodingException ex) {
@@ -601,11 +1710,84 @@ public class XMLUtils {
         } catch (IOException ex) {
             throw new IOException("Erro ao gravar \"" + file.getName() + "\". Erro de entrada/saida.", ex);
         }
+    }
 
+    /**
+     * Grava em um arquivo temporário no mesmo diretório (serializando o
+     * Document diretamente para o FileChannel, sem String intermediária),
+     * força a gravação no disco conforme a {@link FsyncPolicy} e então
+     * substitui o arquivo de destino com um "move" atômico. Leitores nunca
+     * veem um arquivo pela metade e uma queda no meio da gravação preserva o
+     * arquivo anterior.
+     */
+    private void saveAtomic(File file, CRC32 crc) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path dir = target.getParent();
+        Path temp = Files.createTempFile(dir, "." + target.getFileName(), ".tmp");
         try {
-            readXML();
-        } catch (Exception ex) {
-            ex.printStackTrace();
+            copyPermissions(target, temp);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out = new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), crc), BUFFER_SIZE);
+                docToStream(doc, out, true, XMLEncoding.isDefault(charset));
+                out.flush();
+                if (fsyncPolicy != FsyncPolicy.NONE) {
+                    channel.force(true);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (fsyncPolicy == FsyncPolicy.FILE_AND_DIRECTORY) {
+                syncDirectory(dir);
+            }
+        } catch (IOException ex) {
+            throw new IOException("Erro ao gravar \"" + file.getName() + "\". Erro de entrada/saida.", ex);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Mantém no arquivo temporário as permissões do arquivo que será
+     * substituído (o temporário é criado com permissões restritas).
+     */
+    static void copyPermissions(Path from, Path to) {
+        try {
+            if (Files.exists(from)) {
+                Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+            }
+        } catch (UnsupportedOperationException | IOException ex) {
+            // Sistema de arquivos sem permissões POSIX
+        }
+    }
+
+    /**
+     * Força a gravação da entrada do diretório (o "rename"). Nem todos os
+     * sistemas permitem abrir um diretório; nesse caso nada é feito.
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // Não suportado (ex: Windows)
+        }
+    }
+
+    /**
+     * Faz o parse do arquivo gravado para garantir que ele contém um XML
+     * válido.
+     *
+     * @param file Arquivo gravado.
+     * @throws IOException Se o arquivo não puder ser lido ou não for um XML
+     * válido.
+     */
+    private void verify(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            XMLFactories.documentBuilder().parse(in);
+        } catch (SAXException ex) {
+            throw new IOException("Erro ao gravar \"" + file.getName() + "\". O arquivo gravado não contém um XML válido.", ex);
         }
     }
 
@@ -619,16 +1801,23 @@ public class XMLUtils {
     public Integer getNumOccur(String tag) throws Exception {
         if (autoLoad) {
             try {
-                readXML();
+                reload();
             } catch (Exception ex) {
                 ex.printStackTrace();
             }
         }
         Integer numOcor;
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
         try {
-            numOcor = doc.getDocumentElement().getElementsByTagName(tag).getLength();
+            CompactDocument c = compact;
+            numOcor = c != null ? c.occurrences(tag, true) : descendants(tag).getLength();
         } catch (Exception ex) {
             throw new Exception("Erro ao resgatar a quantidade de ocorrências da tag ['" + tag + "'].", ex);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
         return numOcor;
     }
@@ -658,11 +1847,9 @@ public class XMLUtils {
     public Document strToDoc(String xml) throws ParserConfigurationException, SAXException, IOException {
         Document xDoc = null;
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            xDoc = builder.parse(new InputSource(new StringReader(xml)));
-        } catch (ParserConfigurationException ex) {
-            throw new ParserConfigurationException("Mensagem: " + ex.getMessage());
+            long start = begin();
+            xDoc = XMLFactories.documentBuilder().parse(new InputSource(new StringReader(xml)));
+            end(XMLMetrics.Operation.PARSE, start, 0);
         } catch (SAXException ex) {
             throw new SAXException("Erro ao fazer o parser do XML. Mensagem: " + ex.getMessage());
         } catch (IOException ex) {
@@ -677,12 +1864,23 @@ public class XMLUtils {
      * @param tag Tag na qual será adicionada a seção CDATA
      * @param value Valor da seção CDATA (conteúdo)
      */
-    public void setCDATA(String tag, String value) throws FileNotFoundException, UnsupportedEncodingException, IOException {
-        doc.getDocumentElement().getElementsByTagName(tag).item(0).setTextContent("");
-        doc.getDocumentElement().getElementsByTagName(tag).item(0).appendChild(doc.createCDATASection(value));
-        if (autoFlush) {
-            XMLUtils.this.save();
+    public synchronized void setCDATA(String tag, String value) throws FileNotFoundException, UnsupportedEncodingException, IOException {
+        requireDom("setCDATA");
+        long start = begin();
+        Lock lock = writeLock();
+        lock.lock();
+        try {
+            Node node = descendants(tag).item(0);
+            if (index != null) {
+                index.removeDescendants(node);
+            }
+            node.setTextContent("");
+            node.appendChild(doc.createCDATASection(value));
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.MUTATE, start, 0);
         }
+        changed();
     }
 
     /**
@@ -733,19 +1931,29 @@ public class XMLUtils {
      * @see createTag(tag)
      * @see createTag(parent, tag)
      */
-    public void createTag(String parent, String tag, String content) throws FileNotFoundException, UnsupportedEncodingException, IOException {
-        Element el = doc.createElement(tag);
-        if (content != null && !content.isEmpty()) {
-            el.setTextContent(content);
-        }
-        if (parent != null && !parent.isEmpty()) {
-            doc.getElementsByTagName(parent).item(0).appendChild(el);
-        } else {
-            doc.getDocumentElement().appendChild(el);
-        }
-        if (autoFlush) {
-            XMLUtils.this.save();
+    public synchronized void createTag(String parent, String tag, String content) throws FileNotFoundException, UnsupportedEncodingException, IOException {
+        requireDom("createTag");
+        long start = begin();
+        Lock lock = writeLock();
+        lock.lock();
+        try {
+            Element el = doc.createElement(tag);
+            if (content != null && !content.isEmpty()) {
+                el.setTextContent(content);
+            }
+            if (parent != null && !parent.isEmpty()) {
+                elements(parent).item(0).appendChild(el);
+            } else {
+                doc.getDocumentElement().appendChild(el);
+            }
+            if (index != null) {
+                index.add(el);
+            }
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.MUTATE, start, 0);
         }
+        changed();
     }
 
     /**
@@ -764,12 +1972,22 @@ public class XMLUtils {
      * @see removeTag(tag, index)
      * @see getNumOccur(tag)
      */
-    public void removeTag(String tag) throws FileNotFoundException, UnsupportedEncodingException, IOException {
-        Element e = (Element) doc.getElementsByTagName(tag).item(0);
-        e.getParentNode().removeChild(e);
-        if (autoFlush) {
-            XMLUtils.this.save();
+    public synchronized void removeTag(String tag) throws FileNotFoundException, UnsupportedEncodingException, IOException {
+        requireDom("removeTag");
+        long start = begin();
+        Lock lock = writeLock();
+        lock.lock();
+        try {
+            Element e = (Element) elements(tag).item(0);
+            if (index != null) {
+                index.remove(e);
+            }
+            e.getParentNode().removeChild(e);
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.MUTATE, start, 0);
         }
+        changed();
     }
 
     /**
@@ -781,12 +1999,192 @@ public class XMLUtils {
      * Tomar cuidado ao habilitar esta opção em procedimentos de gravações
      * sucessivas, pois pode ocorrer corrupção do arquivo XML. Nesses casos,
      * desabilite a funcionalidade, faça as alterações necessárias e no final
-     * chame o método "save" para persistir as alterações.
+     * chame o método "save" para persistir as alterações, ou use a
+     * auto-gravação agrupada ("setAutoFlush(maxChanges, maxDelayMillis)").
+     * Alterações ainda pendentes da auto-gravação agrupada são gravadas
+     * antes da troca.
      *
      * @param enable Ativa/Desativa a auto-gravação do XML.
+     * @throws XMLException Se as alterações pendentes não puderem ser
+     * gravadas.
+     * @see #setAutoFlush(int, long)
      */
-    public void setAutoFlush(boolean enable) {
+    public synchronized void setAutoFlush(boolean enable) {
+        flushPending();
         this.autoFlush = enable;
+        this.flushEvery = 1;
+        this.flushDelay = 0;
+    }
+
+    /**
+     * Habilita a auto-gravação agrupada. Em vez de regravar o arquivo a cada
+     * alteração, as alterações são acumuladas e gravadas de uma só vez quando
+     * o numero de alterações pendentes atingir "maxChanges" ou quando
+     * "maxDelayMillis" milissegundos tiverem passado desde a primeira
+     * alteração pendente, o que ocorrer primeiro. A gravação por tempo é
+     * feita em segundo plano (thread "daemon"), sem depender de novas
+     * chamadas. Se ela falhar, o erro é exibido e uma nova tentativa é
+     * agendada após "maxDelayMillis" ms.
+     *
+     * Como a gravação em segundo plano lê o Document ao mesmo tempo que as
+     * leituras da aplicação, o tempo máximo só pode ser usado no modo
+     * concorrente (ver {@link #setConcurrent(boolean)}), em que o Document é
+     * expandido por completo e a gravação é feita sob o read lock.
+     *
+     * Assim, no máximo "maxChanges" alterações ou "maxDelayMillis" ms de
+     * alterações podem ser perdidos em caso de queda do processo. Use
+     * "flush()" para gravar as pendências imediatamente e "close()" ao
+     * terminar de usar o objeto.
+     *
+     * @param maxChanges Numero de alterações por gravação (0 = sem limite).
+     * @param maxDelayMillis Tempo máximo, em ms, que uma alteração pode
+     * ficar pendente (0 = sem limite).
+     * @throws XMLException Se os valores forem inválidos, se
+     * "maxDelayMillis" for usado fora do modo concorrente ou se as alterações
+     * pendentes da configuração anterior não puderem ser gravadas.
+     * @see #flush()
+     */
+    public synchronized void setAutoFlush(int maxChanges, long maxDelayMillis) {
+        if (maxChanges < 0 || maxDelayMillis < 0 || (maxChanges == 0 && maxDelayMillis == 0)) {
+            throw new XMLException("Informe um numero de alterações e/ou um tempo máximo maior que zero.");
+        }
+        if (maxDelayMillis > 0 && !concurrent) {
+            throw new XMLException("A auto-gravação por tempo exige o modo concorrente. Use \"setConcurrent(true)\" antes.");
+        }
+        flushPending();
+        this.autoFlush = true;
+        this.flushEvery = maxChanges;
+        this.flushDelay = maxDelayMillis;
+    }
+
+    /**
+     * Grava as alterações pendentes antes de uma troca de configuração, para
+     * que não fiquem esperando uma nova alteração.
+     */
+    private void flushPending() {
+        try {
+            flush();
+        } catch (IOException ex) {
+            throw new XMLException("Erro ao gravar as alterações pendentes.", ex);
+        }
+    }
+
+    /**
+     * Grava imediatamente as alterações pendentes da auto-gravação agrupada.
+     * Não faz nada se não houver alterações pendentes.
+     *
+     * @throws IOException
+     * @see #setAutoFlush(int, long)
+     */
+    public synchronized void flush() throws IOException {
+        cancelScheduledFlush();
+        if (pendingChanges > 0) {
+            save();
+            pendingChanges = 0;
+            metrics.flushed();
+        }
+    }
+
+    /**
+     * Indica se existem alterações ainda não gravadas pela auto-gravação.
+     */
+    public synchronized boolean hasPendingChanges() {
+        return pendingChanges > 0;
+    }
+
+    /**
+     * Chamado pelos métodos de alteração. Grava o arquivo conforme a
+     * configuração da auto-gravação.
+     */
+    private synchronized void changed() throws IOException {
+        if (!autoFlush) {
+            return;
+        }
+        pendingChanges++;
+        if (flushEvery > 0 && pendingChanges >= flushEvery) {
+            flush();
+        } else if (flushDelay > 0 && scheduledFlush == null) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Agenda a gravação por tempo. A gravação é feita sob o read lock, para
+     * que a auto-leitura não troque o Document durante a serialização; em
+     * caso de erro uma nova tentativa é agendada.
+     */
+    private void scheduleFlush() {
+        scheduledFlush = FlushScheduler.INSTANCE.schedule(() -> {
+            synchronized (XMLUtils.this) {
+                scheduledFlush = null;
+                Lock lock = readLock();
+                lock.lock();
+                try {
+                    flush();
+                } catch (IOException | RuntimeException ex) {
+                    ex.printStackTrace();
+                    if (autoFlush && flushDelay > 0 && pendingChanges > 0) {
+                        scheduleFlush();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }, flushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    /**
+     * Thread única (daemon) compartilhada pelas gravações agendadas.
+     */
+    private static final class FlushScheduler {
+
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "XMLUtils-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Lock que não faz nada, usado fora do modo concorrente.
+     */
+    private static final class NoLock implements Lock {
+
+        static final NoLock INSTANCE = new NoLock();
+
+        @Override
+        public void lock() {
+        }
+
+        @Override
+        public void lockInterruptibly() {
+        }
+
+        @Override
+        public boolean tryLock() {
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) {
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     /**
@@ -795,10 +2193,222 @@ public class XMLUtils {
      * memória, como por ex: getValue, getValues, getMapChilds, getNumOccur,
      * etc.
      *
+     * O arquivo só é lido novamente quando tiver sido alterado no disco,
+     * conforme o critério definido em "setAutoLoadPolicy".
+     *
      * @param enable Ativa/Desativa a auto-leitura do XML.
+     * @see #setAutoLoadPolicy(ReloadPolicy)
      */
     public void setAutoLoad(boolean enable) {
         this.autoLoad = enable;
+        if (enable && reloadPolicy == ReloadPolicy.WATCH) {
+            startWatcher();
+        } else {
+            stopWatcher();
+        }
+    }
+
+    /**
+     * Define quando a auto-leitura deve ler o arquivo novamente. Por padrão
+     * ({@link ReloadPolicy#METADATA}) o arquivo só é lido novamente quando o
+     * seu tamanho ou data de modificação mudarem.
+     *
+     * @param policy Critério de releitura.
+     * @see ReloadPolicy
+     */
+    public void setAutoLoadPolicy(ReloadPolicy policy) {
+        if (policy == null) {
+            throw new XMLException("A política de releitura não pode ser nula.");
+        }
+        stopWatcher();
+        this.reloadPolicy = policy;
+        if (policy == ReloadPolicy.CHECKSUM && stamp != null) {
+            // O checksum da leitura atual não é conhecido
+            stamp = null;
+        }
+        if (autoLoad && policy == ReloadPolicy.WATCH) {
+            startWatcher();
+        }
+    }
+
+    public ReloadPolicy getAutoLoadPolicy() {
+        return reloadPolicy;
+    }
+
+    /**
+     * Grava as alterações pendentes da auto-gravação e libera os recursos em
+     * uso (ex: a observação do arquivo feita pela auto-leitura com
+     * {@link ReloadPolicy#WATCH}). O conteúdo em memória continua acessível.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        stopWatcher();
+        flush();
+    }
+
+    /**
+     * Habilita/Desabilita o índice de tags. Com o índice ativo o documento é
+     * percorrido uma única vez (na leitura) e as buscas por tag de todos os
+     * métodos de leitura e alteração deixam de percorrer a árvore inteira.
+     * O índice é mantido pelos métodos de alteração (setValue, setValues,
+     * setCDATA, createTag, removeTag) e reconstruído a cada leitura do
+     * arquivo.
+     *
+     * Alterações feitas diretamente no Document (via "getDocument()") não são
+     * refletidas no índice. Nesse caso chame este método novamente para
+     * reconstruí-lo.
+     *
+     * @param enable Ativa/Desativa o índice de tags.
+     */
+    public void setIndexed(boolean enable) {
+        Lock lock = writeLock();
+        lock.lock();
+        try {
+            this.indexed = enable;
+            reindex();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Habilita/Desabilita o modo concorrente, que permite compartilhar a
+     * mesma instância entre várias threads. Nesse modo as leituras (getValue,
+     * getValues, getAttributes, getMapChilds, getNumOccur, etc.) são feitas
+     * em paralelo, sob um read lock, e as alterações (setValue, setValues,
+     * setCDATA, createTag, removeTag, etc.) passam uma de cada vez por um
+     * write lock, que aguarda as leituras em andamento. A troca do Document
+     * pela auto-leitura também é feita sob o write lock.
+     *
+     * Como a árvore DOM não é segura para leituras simultâneas enquanto os
+     * nós ainda não foram expandidos pelo parser, no modo concorrente o
+     * Document é expandido por completo a cada leitura do arquivo e o índice
+     * de tags fica sempre ativo. Fora do modo concorrente nenhum lock é
+     * utilizado.
+     *
+     * Deve ser configurado antes de a instância ser compartilhada. O acesso
+     * direto ao Document (via "getDocument()") não é protegido.
+     *
+     * @param enable Ativa/Desativa o modo concorrente.
+     * @throws XMLException Ao desativar com a auto-gravação por tempo ativa.
+     * @see #setIndexed(boolean)
+     * @see #setAutoFlush(int, long)
+     */
+    public synchronized void setConcurrent(boolean enable) {
+        if (!enable && autoFlush && flushDelay > 0) {
+            throw new XMLException("Desative a auto-gravação por tempo antes de sair do modo concorrente.");
+        }
+        rwLock.writeLock().lock();
+        try {
+            this.concurrent = enable;
+            reindex();
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Define onde as medições desta instância são registradas (duração do
+     * parse, consultas, alterações, serialização e gravação, bytes lidos e
+     * gravados, releituras e auto-gravações). O parse feito pelo construtor
+     * usa o padrão definido em {@link #setDefaultMetrics(XMLMetrics)}.
+     *
+     * @param metrics Receptor das medições, ou null (ou XMLMetrics.NONE)
+     * para não medir.
+     * @see XMLStats
+     */
+    public void setMetrics(XMLMetrics metrics) {
+        this.metrics = (metrics != null ? metrics : XMLMetrics.NONE);
+    }
+
+    public XMLMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Define as medições usadas pelas instâncias criadas a partir de agora
+     * (inclusive as criadas internamente, como no {@link XMLBatch}).
+     *
+     * @param metrics Receptor das medições, ou null (ou XMLMetrics.NONE)
+     * para não medir.
+     */
+    public static void setDefaultMetrics(XMLMetrics metrics) {
+        defaultMetrics = (metrics != null ? metrics : XMLMetrics.NONE);
+    }
+
+    public static XMLMetrics getDefaultMetrics() {
+        return defaultMetrics;
+    }
+
+    /**
+     * Habilita/Desabilita a verificação do arquivo após cada gravação. Por
+     * padrão o arquivo gravado não é lido novamente, pois o Document em
+     * memória é a referência. Com a verificação ativa o arquivo gravado é
+     * lido e validado (parse) e "save" lança IOException caso ele não
+     * contenha um XML válido. O Document em memória não é substituído.
+     *
+     * @param enable Ativa/Desativa a verificação após a gravação.
+     */
+    public void setVerifyOnSave(boolean enable) {
+        this.verifyOnSave = enable;
+    }
+
+    public boolean isVerifyOnSave() {
+        return verifyOnSave;
+    }
+
+    /**
+     * Habilita/Desabilita a gravação atômica. Com ela ativa, "save" grava o
+     * XML em um arquivo temporário no mesmo diretório, força a gravação no
+     * disco ({@link FsyncPolicy#FILE}) e substitui o arquivo original com um
+     * "move" atômico. Assim leitores (inclusive a auto-leitura) nunca veem um
+     * XML incompleto e uma queda durante a gravação preserva o arquivo
+     * anterior.
+     *
+     * @param enable Ativa/Desativa a gravação atômica.
+     * @see #setAtomicSave(boolean, FsyncPolicy)
+     */
+    public void setAtomicSave(boolean enable) {
+        setAtomicSave(enable, FsyncPolicy.FILE);
+    }
+
+    /**
+     * Habilita/Desabilita a gravação atômica com a política de fsync
+     * informada.
+     *
+     * @param enable Ativa/Desativa a gravação atômica.
+     * @param policy O que deve ser forçado para o disco antes de "save"
+     * retornar.
+     * @see FsyncPolicy
+     */
+    public void setAtomicSave(boolean enable, FsyncPolicy policy) {
+        if (policy == null) {
+            throw new XMLException("A política de fsync não pode ser nula.");
+        }
+        this.atomicSave = enable;
+        this.fsyncPolicy = policy;
+    }
+
+    public boolean isAtomicSave() {
+        return atomicSave;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public LoadMode getLoadMode() {
+        return loadMode;
     }
 
     public File getFile() {
@@ -812,6 +2422,7 @@ public class XMLUtils {
     public void setCharset(String charset) throws Exception {
         if (charset != null && !charset.isEmpty()) {
             this.charset = charset;
+            this.charsetExplicit = true;
         } else {
             throw new Exception("O valor do charset não poder ser nulo ou em branco.\n"
                     + "Use [XMLUtils.UTF_8] ou [XMLUtils.ISO_8859_1] para especificar o charset.\n"
@@ -821,7 +2432,7 @@ public class XMLUtils {
 
     @Override
     public String toString() {
-        return docToStr(doc);
+        return docToStr(compact != null ? compact.toDocument(0) : doc);
     }
 
     /**
@@ -846,65 +2457,285 @@ public class XMLUtils {
      */
     public String docToStr(Document document, boolean indent, boolean omit_declaration) {
         try {
-            // Garante a indentação --------------------------------------------
-            XPath xPath = XPathFactory.newInstance().newXPath();
-            NodeList nodeList = (NodeList) xPath.evaluate("//text()[normalize-space()='']",
-                    document,
-                    XPathConstants.NODESET);
-
-            for (int i = 0; i < nodeList.getLength(); ++i) {
-                Node node = nodeList.item(i);
-                node.getParentNode().removeChild(node);
-            }
-            // -----------------------------------------------------------------
-        } catch (XPathExpressionException ex) {
-            ex.printStackTrace();
-        }
-
-        try {
-            // Faz a transformação ---------------------------------------------
-            Transformer tr = TransformerFactory.newInstance().newTransformer();
-            tr.setOutputProperty(OutputKeys.INDENT, (indent ? "yes" : "no"));
-            tr.setOutputProperty(OutputKeys.METHOD, "xml");
-            tr.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, (omit_declaration ? "yes" : "no"));
-            tr.setOutputProperty(OutputKeys.ENCODING, this.charset);
-            tr.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-
             Writer out = new StringWriter();
-            tr.transform(new DOMSource(document), new StreamResult(out));
+            transform(document, new StreamResult(out), indent, omit_declaration);
             return out.toString();
-            // -----------------------------------------------------------------
         } catch (TransformerException te) {
             te.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * Serializa um Document diretamente para um OutputStream, codificado com
+     * o charset configurado, sem montar uma String com todo o XML. O stream
+     * não é fechado.
+     *
+     * @param document Document que será serializado
+     * @param out Stream de destino
+     * @param indent Indica que se o XML será indentado
+     * @param omit_declaration A declaração do XML será omitida
+     * @throws IOException
+     * @see #docToStr(Document, boolean, boolean)
+     */
+    public void docToStream(Document document, OutputStream out, boolean indent, boolean omit_declaration) throws IOException {
+        try {
+            transform(document, new StreamResult(out), indent, omit_declaration);
+        } catch (TransformerException ex) {
+            throw new IOException("Erro ao serializar o XML.", ex);
+        }
+    }
+
+    /**
+     * Serializa um Document diretamente para um Writer, sem montar uma String
+     * com todo o XML. O writer não é fechado.
+     *
+     * @param document Document que será serializado
+     * @param writer Writer de destino
+     * @param indent Indica que se o XML será indentado
+     * @param omit_declaration A declaração do XML será omitida
+     * @throws IOException
+     * @see #docToStr(Document, boolean, boolean)
+     */
+    public void docToStream(Document document, Writer writer, boolean indent, boolean omit_declaration) throws IOException {
+        try {
+            transform(document, new StreamResult(writer), indent, omit_declaration);
+        } catch (TransformerException ex) {
+            throw new IOException("Erro ao serializar o XML.", ex);
+        }
+    }
+
+    /**
+     * Serializa um Document diretamente para um canal (ex: FileChannel ou
+     * SocketChannel), codificado com o charset configurado. O canal não é
+     * fechado.
+     *
+     * @param document Document que será serializado
+     * @param channel Canal de destino
+     * @param indent Indica que se o XML será indentado
+     * @param omit_declaration A declaração do XML será omitida
+     * @throws IOException
+     * @see #docToStr(Document, boolean, boolean)
+     */
+    public void docToStream(Document document, WritableByteChannel channel, boolean indent, boolean omit_declaration) throws IOException {
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        docToStream(document, out, indent, omit_declaration);
+        out.flush();
+    }
+
+    /**
+     * Serializa o Document para o destino informado.
+     *
+     * @param document Document que será serializado
+     * @param result Destino da serialização
+     * @param indent Indica que se o XML será indentado
+     * @param omit_declaration A declaração do XML será omitida
+     * @throws TransformerException
+     */
+    private void transform(Document document, StreamResult result, boolean indent, boolean omit_declaration) throws TransformerException {
+        // Os nós de texto formados apenas por espaços são ignorados durante a
+        // própria serialização (garante a indentação sem alterar o Document).
+        Transformer tr = XMLFactories.transformer();
+        tr.setOutputProperty(OutputKeys.INDENT, (indent ? "yes" : "no"));
+        tr.setOutputProperty(OutputKeys.METHOD, "xml");
+        tr.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, (omit_declaration ? "yes" : "no"));
+        tr.setOutputProperty(OutputKeys.STANDALONE, "no");
+        tr.setOutputProperty(OutputKeys.ENCODING, this.charset);
+        tr.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+        long start = begin();
+        tr.transform(new SAXSource(new DOMReader(document), new InputSource()), result);
+        end(XMLMetrics.Operation.SERIALIZE, start, 0);
+    }
+
     /**
      * Transforma parte de um XML, em um novo Document. Em outras palavras,
      * consiste em pegar uma sub-árvore de um XML e transformá-lo um novo XML.
      *
+     * A sub-árvore é copiada nó a nó ("importNode") para o novo Document, sem
+     * serializar e fazer o parse novamente. O XML original não é alterado.
+     *
      * @param parent_tag Tag do xml (original) que será a tag raiz do novo XML
-     * @return Document representando o novo XML criado a partir do fragmento
+     * @return Document representando o novo XML criado a partir do fragmento,
+     * ou null se a tag não existir
      */
     public Document getSubDocument(String parent_tag) {
-        StringWriter sw = null;
-        try {
-            sw = new StringWriter();
-            Transformer serializer = TransformerFactory.newInstance().newTransformer();
-            serializer.transform(
-                    new DOMSource(doc.getElementsByTagName(parent_tag).item(0)),
-                    new StreamResult(sw)
-            );
-            return strToDoc(sw.toString());
-        } catch (IOException | ParserConfigurationException | SAXException | TransformerException ex) {
-            ex.printStackTrace();
-            return null;
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            CompactDocument c = compact;
+            if (c != null) {
+                int[] list = c.elements(parent_tag);
+                return list.length > 0 ? c.toDocument(list[0]) : null;
+            }
+            Node node = elements(parent_tag).item(0);
+            if (node == null) {
+                return null;
+            }
+            Document sub = XMLFactories.documentBuilder().newDocument();
+            sub.appendChild(sub.importNode(node, true));
+            return sub;
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
+        }
+    }
+
+    /**
+     * Gera um novo Document para cada ocorrência da tag, em ordem de
+     * documento, percorrendo a lista de ocorrências uma única vez. O XML
+     * original não é alterado.
+     *
+     * @param parent_tag Tag do xml (original) que será a tag raiz de cada novo
+     * XML
+     * @return Lista com um Document para cada ocorrência (vazia se a tag não
+     * existir)
+     * @see #getSubDocument(String)
+     */
+    public List<Document> getSubDocuments(String parent_tag) {
+        if (autoLoad) {
+            reload();
+        }
+        long start = begin();
+        Lock lock = readLock();
+        lock.lock();
+        try {
+            CompactDocument c = compact;
+            if (c != null) {
+                List<Document> docs = new ArrayList<Document>();
+                for (int e : c.elements(parent_tag)) {
+                    docs.add(c.toDocument(e));
+                }
+                return docs;
+            }
+            NodeList nodeList = elements(parent_tag);
+            int numTags = nodeList.getLength();
+            List<Document> docs = new ArrayList<Document>(numTags);
+            for (int i = 0; i < numTags; i++) {
+                Document sub = XMLFactories.documentBuilder().newDocument();
+                sub.appendChild(sub.importNode(nodeList.item(i), true));
+                docs.add(sub);
+            }
+            return docs;
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.QUERY, start, 0);
         }
     }
 
+    /**
+     * Separa cada ocorrência da tag em um novo Document, MOVENDO a sub-árvore
+     * ("adoptNode") em vez de copiá-la: os nós deixam de fazer parte do XML
+     * original, que fica menor a cada extração. Indicado para dividir um XML
+     * grande (ex: um lote) em milhares de documentos sem duplicar a memória.
+     *
+     * Ocorrências aninhadas em outra ocorrência já separada acompanham a
+     * ocorrência externa e não geram um Document próprio.
+     *
+     * Por alterar o XML em memória, a remoção é gravada no arquivo quando a
+     * auto-gravação estiver habilitada.
+     *
+     * @param parent_tag Tag do xml (original) que será a tag raiz de cada novo
+     * XML
+     * @return Lista com um Document para cada ocorrência separada
+     * @throws IOException Erro na auto-gravação do arquivo
+     * @see #getSubDocuments(String)
+     */
+    public synchronized List<Document> detachSubDocuments(String parent_tag) throws IOException {
+        requireDom("detachSubDocuments");
+        if (autoLoad) {
+            reload();
+        }
+        List<Document> docs;
+        long start = begin();
+        Lock lock = writeLock();
+        lock.lock();
+        try {
+            NodeList nodeList = elements(parent_tag);
+            // Cópia da lista, que é alterada à medida que os nós são removidos
+            int numTags = nodeList.getLength();
+            Element[] elements = new Element[numTags];
+            for (int i = 0; i < numTags; i++) {
+                elements[i] = (Element) nodeList.item(i);
+            }
+            docs = new ArrayList<Document>(numTags);
+            for (Element e : elements) {
+                if (e.getOwnerDocument() != doc || e == doc.getDocumentElement()) {
+                    // Já foi levado junto com uma ocorrência externa, ou é a raiz
+                    continue;
+                }
+                if (index != null) {
+                    index.remove(e);
+                }
+                Document sub = XMLFactories.documentBuilder().newDocument();
+                Node node = sub.adoptNode(e);
+                if (node == null) {
+                    // Implementações de DOM diferentes: copia e remove
+                    node = sub.importNode(e, true);
+                    e.getParentNode().removeChild(e);
+                }
+                sub.appendChild(node);
+                docs.add(sub);
+            }
+        } finally {
+            lock.unlock();
+            end(XMLMetrics.Operation.MUTATE, start, 0);
+        }
+        if (!docs.isEmpty()) {
+            changed();
+        }
+        return docs;
+    }
+
+    /**
+     * Retorna a árvore DOM do XML. Nos modos compactos ({@link Storage})
+     * retorna uma cópia criada a cada chamada, e alterações feitas nela não
+     * são refletidas nesta instância.
+     *
+     * @return Document do XML.
+     */
     public Document getDocument() {
-        return doc;
+        CompactDocument c = compact;
+        return c != null ? c.toDocument(0) : doc;
+    }
+
+    /**
+     * Abre um {@link XMLWriter} para gerar um documento grande diretamente
+     * no arquivo, em UTF-8, sem montar a árvore DOM.
+     *
+     * @param file Arquivo de destino (substituído se existir).
+     * @return XMLWriter com o documento iniciado.
+     * @throws IOException
+     */
+    public static XMLWriter newWriter(File file) throws IOException {
+        return new XMLWriter(file, UTF_8);
+    }
+
+    /**
+     * Abre um {@link XMLWriter} para gerar um documento grande diretamente
+     * no arquivo, sem montar a árvore DOM.
+     *
+     * @param file Arquivo de destino (substituído se existir).
+     * @param charset Codificação do arquivo.
+     * @return XMLWriter com o documento iniciado.
+     * @throws IOException
+     */
+    public static XMLWriter newWriter(File file, String charset) throws IOException {
+        return new XMLWriter(file, charset);
+    }
+
+    /**
+     * Metadados do arquivo na ultima leitura.
+     */
+    FileStamp getStamp() {
+        return stamp;
+    }
+
+    public Storage getStorage() {
+        return storage;
     }
 
     public static void main(String[] args) throws Exception {
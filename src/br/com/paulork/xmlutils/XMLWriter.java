@@ -0,0 +1,384 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.BitSet;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Gravação de XML em um único sentido (sem árvore DOM), para documentos
+ * grandes. Cada chamada escreve diretamente no destino através de um
+ * XMLStreamWriter, então a memória usada não depende do tamanho do documento,
+ * ao contrário de chamadas repetidas de
+ * {@link XMLUtils#createTag(String, String, String)}, que procuram a tag pai
+ * na árvore inteira a cada chamada e mantêm tudo em memória até o "save()".
+ *
+ * Subárvores DOM já existentes (ex: um Document de outro XMLUtils) podem ser
+ * incluídas com {@link #node(Node)}.
+ *
+ * <pre>{@code
+ * try (XMLWriter w = XMLUtils.newWriter(new File("lote.xml"))) {
+ *     w.start("lote");
+ *     for (Nota nota : notas) {
+ *         w.start("nota").attribute("numero", String.valueOf(nota.getNumero()))
+ *                 .element("emitente", nota.getEmitente())
+ *                 .node(nota.getItens())
+ *                 .end();
+ *     }
+ * }
+ * }</pre>
+ *
+ * Os erros de gravação são lançados como {@link XMLException}. O
+ * {@link #close()} fecha as tags ainda abertas, finaliza o documento e fecha
+ * o destino. Uma instância não deve ser usada por várias threads.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class XMLWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final XMLStreamWriter writer;
+    private boolean indent = false;
+    // Numero de tags abertas
+    private int depth = 0;
+    // Tags abertas que já possuem tags filhas (para a indentação)
+    private final BitSet children = new BitSet();
+    private boolean closed = false;
+
+    /**
+     * Cria o arquivo (substituindo o existente) e inicia o documento.
+     *
+     * @param file Arquivo de destino.
+     * @param charset Codificação (null para UTF-8).
+     * @throws IOException
+     */
+    public XMLWriter(File file, String charset) throws IOException {
+        this(open(file, charset), charset);
+    }
+
+    /**
+     * Inicia o documento no canal informado (ex: FileChannel ou
+     * SocketChannel), que é fechado em {@link #close()}.
+     *
+     * @param channel Canal de destino.
+     * @param charset Codificação (null para UTF-8).
+     */
+    public XMLWriter(WritableByteChannel channel, String charset) {
+        this(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), charset);
+    }
+
+    /**
+     * Inicia o documento no stream informado, que é fechado em
+     * {@link #close()} (ou aqui mesmo, se o documento não puder ser
+     * iniciado).
+     *
+     * @param out Stream de destino.
+     * @param charset Codificação (null para UTF-8).
+     */
+    public XMLWriter(OutputStream out, String charset) {
+        this.out = out;
+        try {
+            String encoding = encoding(charset);
+            this.writer = XMLFactories.getXMLOutputFactory().createXMLStreamWriter(out, encoding);
+            writer.writeStartDocument(encoding, "1.0");
+        } catch (XMLStreamException ex) {
+            closeQuietly(out);
+            throw new XMLException("Erro ao iniciar a gravação do XML.", ex);
+        } catch (RuntimeException ex) {
+            closeQuietly(out);
+            throw ex;
+        }
+    }
+
+    /**
+     * Valida a codificação antes de criar o arquivo, para que um erro não
+     * apague o arquivo existente.
+     */
+    private static OutputStream open(File file, String charset) throws IOException {
+        encoding(charset);
+        return new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+    }
+
+    private static String encoding(String charset) {
+        String encoding = (charset != null ? charset : XMLUtils.UTF_8);
+        if (!XMLEncoding.isSupported(encoding)) {
+            throw new XMLException("Codificação não suportada: \"" + encoding + "\".");
+        }
+        return encoding;
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException ex) {
+            // O erro original é mais relevante
+        }
+    }
+
+    /**
+     * Define se as tags são indentadas (2 espaços por nível). Com a
+     * indentação ativa, textos formados apenas por espaços das subárvores
+     * incluídas com {@link #node(Node)} são ignorados.
+     *
+     * @param indent true para indentar.
+     * @return Este XMLWriter.
+     */
+    public XMLWriter setIndent(boolean indent) {
+        this.indent = indent;
+        return this;
+    }
+
+    public boolean isIndent() {
+        return indent;
+    }
+
+    /**
+     * @return Numero de tags abertas.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Abre uma tag.
+     *
+     * @param tag Nome da tag.
+     * @return Este XMLWriter.
+     */
+    public XMLWriter start(String tag) {
+        try {
+            newLine();
+            children.set(depth);
+            writer.writeStartElement(tag);
+            depth++;
+            children.clear(depth);
+        } catch (XMLStreamException ex) {
+            throw error("Erro ao abrir a tag [" + tag + "].", ex);
+        }
+        return this;
+    }
+
+    /**
+     * Adiciona um atributo à tag aberta por último (antes de qualquer
+     * conteúdo).
+     *
+     * @param name Nome do atributo.
+     * @param value Valor do atributo.
+     * @return Este XMLWriter.
+     */
+    public XMLWriter attribute(String name, String value) {
+        try {
+            writer.writeAttribute(name, value);
+        } catch (XMLStreamException ex) {
+            throw error("Erro ao gravar o atributo [" + name + "].", ex);
+        }
+        return this;
+    }
+
+    /**
+     * Grava um texto na tag aberta (os caracteres especiais são escapados).
+     *
+     * @param text Texto.
+     * @return Este XMLWriter.
+     */
+    public XMLWriter text(String text) {
+        try {
+            writer.writeCharacters(text);
+        } catch (XMLStreamException ex) {
+            throw error("Erro ao gravar o texto.", ex);
+        }
+        return this;
+    }
+
+    /**
+     * Grava uma seção CDATA na tag aberta. Ocorrências de "]]&gt;" no texto
+     * são divididas em duas seções.
+     *
+     * @param text Texto.
+     * @return Este XMLWriter.
+     */
+    public XMLWriter cdata(String text) {
+        try {
+            int start = 0;
+            int i;
+            while ((i = text.indexOf("]]>", start)) >= 0) {
+                writer.writeCData(text.substring(start, i + 2));
+                start = i + 2;
+            }
+            writer.writeCData(text.substring(start));
+        } catch (XMLStreamException ex) {
+            throw error("Erro ao gravar o CDATA.", ex);
+        }
+        return this;
+    }
+
+    /**
+     * Grava um comentário.
+     *
+     * @param text Texto do comentário.
+     * @return Este XMLWriter.
+     */
+    public XMLWriter comment(String text) {
+        try {
+            newLine();
+            children.set(depth);
+            writer.writeComment(text);
+        } catch (XMLStreamException ex) {
+            throw error("Erro ao gravar o comentário.", ex);
+        }
+        return this;
+    }
+
+    /**
+     * Fecha a tag aberta por último.
+     *
+     * @return Este XMLWriter.
+     */
+    public XMLWriter end() {
+        if (depth == 0) {
+            throw new XMLException("Não há nenhuma tag aberta.");
+        }
+        try {
+            depth--;
+            if (children.get(depth + 1)) {
+                newLine();
+            }
+            writer.writeEndElement();
+        } catch (XMLStreamException ex) {
+            throw error("Erro ao fechar a tag.", ex);
+        }
+        return this;
+    }
+
+    /**
+     * Grava uma tag completa com o conteúdo informado, equivalente a
+     * {@code start(tag).text(content).end()}.
+     *
+     * @param tag Nome da tag.
+     * @param content Conteúdo da tag (null para uma tag vazia).
+     * @return Este XMLWriter.
+     */
+    public XMLWriter element(String tag, String content) {
+        start(tag);
+        if (content != null) {
+            text(content);
+        }
+        return end();
+    }
+
+    /**
+     * Inclui uma subárvore DOM na posição atual. Para um Document é incluída
+     * a tag raíz.
+     *
+     * @param node Element, Document ou qualquer nó de conteúdo.
+     * @return Este XMLWriter.
+     */
+    public XMLWriter node(Node node) {
+        switch (node.getNodeType()) {
+            case Node.DOCUMENT_NODE:
+                return node(((Document) node).getDocumentElement());
+            case Node.DOCUMENT_FRAGMENT_NODE:
+            case Node.ENTITY_REFERENCE_NODE:
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    node(child);
+                }
+                return this;
+            case Node.ELEMENT_NODE:
+                start(node.getNodeName());
+                NamedNodeMap attrs = node.getAttributes();
+                for (int i = 0, n = attrs.getLength(); i < n; i++) {
+                    Node attr = attrs.item(i);
+                    attribute(attr.getNodeName(), attr.getNodeValue());
+                }
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    node(child);
+                }
+                return end();
+            case Node.TEXT_NODE:
+                String text = node.getNodeValue();
+                return (indent && text.trim().isEmpty()) ? this : text(text);
+            case Node.CDATA_SECTION_NODE:
+                return cdata(node.getNodeValue());
+            case Node.COMMENT_NODE:
+                return comment(node.getNodeValue());
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                try {
+                    newLine();
+                    writer.writeProcessingInstruction(node.getNodeName(), node.getNodeValue());
+                } catch (XMLStreamException ex) {
+                    throw error("Erro ao gravar a instrução de processamento.", ex);
+                }
+                return this;
+            default:
+                return this;
+        }
+    }
+
+    /**
+     * Envia ao destino o conteúdo já gravado.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        try {
+            writer.flush();
+        } catch (XMLStreamException ex) {
+            throw new IOException("Erro ao gravar o XML.", ex);
+        }
+        out.flush();
+    }
+
+    /**
+     * Fecha as tags abertas, finaliza o documento e fecha o destino.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            while (depth > 0) {
+                end();
+            }
+            writer.writeEndDocument();
+            writer.close();
+            out.flush();
+        } catch (XMLStreamException ex) {
+            throw new IOException("Erro ao finalizar o XML.", ex);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void newLine() throws XMLStreamException {
+        if (indent) {
+            writer.writeCharacters("\n");
+            for (int i = 0; i < depth; i++) {
+                writer.writeCharacters("  ");
+            }
+        }
+    }
+
+    private XMLException error(String message, XMLStreamException ex) {
+        return new XMLException(message + " [" + ex.getMessage() + "]", ex);
+    }
+
+}
@@ -0,0 +1,152 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * Consulta XPath pré-compilada, que pode ser guardada e reutilizada em
+ * qualquer instância de {@link XMLUtils} e por várias threads.
+ *
+ * Como o XPathExpression do JAXP não é seguro para uso simultâneo, cada
+ * thread compila a expressão uma única vez e passa a reutilizá-la. As
+ * consultas obtidas por {@link #compile(String)} ficam em um cache LRU
+ * compartilhado (por padrão {@value #DEFAULT_CACHE_SIZE} expressões), assim
+ * os métodos "...ByXPath(String)" do XMLUtils não compilam a mesma expressão
+ * a cada chamada.
+ *
+ * <pre>{@code
+ * static final XPathQuery VALOR = XPathQuery.compile("/lote/nota[@serie='1']/valor");
+ * ...
+ * String valor = xml.getValue(VALOR);
+ * }</pre>
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public final class XPathQuery {
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static int cacheSize = DEFAULT_CACHE_SIZE;
+    private static final Map<String, XPathQuery> CACHE = new LinkedHashMap<String, XPathQuery>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, XPathQuery> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private final String expression;
+    // Expressão compilada por cada thread
+    private final ThreadLocal<Compiled> compiled = new ThreadLocal<Compiled>();
+
+    private XPathQuery(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Retorna a consulta da expressão informada, compilando-a caso ainda não
+     * esteja no cache.
+     *
+     * @param expression Expressão XPath.
+     * @return Consulta pronta para uso.
+     * @throws XMLException Se a expressão for inválida.
+     */
+    public static XPathQuery compile(String expression) {
+        if (expression == null || expression.isEmpty()) {
+            throw new XMLException("A expressão XPath não pode ser nula ou vazia.");
+        }
+        XPathQuery query;
+        synchronized (CACHE) {
+            query = CACHE.get(expression);
+        }
+        if (query == null) {
+            query = new XPathQuery(expression);
+            // Valida a expressão antes de colocá-la no cache
+            query.expression();
+            synchronized (CACHE) {
+                XPathQuery cached = CACHE.get(expression);
+                if (cached != null) {
+                    query = cached;
+                } else {
+                    CACHE.put(expression, query);
+                }
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Define o numero máximo de expressões mantidas no cache. As menos
+     * usadas recentemente são descartadas primeiro.
+     *
+     * @param size Numero máximo de expressões (0 desativa o cache).
+     */
+    public static void setCacheSize(int size) {
+        if (size < 0) {
+            throw new XMLException("O tamanho do cache não pode ser negativo.");
+        }
+        synchronized (CACHE) {
+            cacheSize = size;
+            while (CACHE.size() > size) {
+                CACHE.remove(CACHE.keySet().iterator().next());
+            }
+        }
+    }
+
+    public static int getCacheSize() {
+        synchronized (CACHE) {
+            return cacheSize;
+        }
+    }
+
+    /**
+     * Descarta todas as expressões do cache. As consultas já obtidas
+     * continuam válidas.
+     */
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Expressão compilada para a thread corrente. Deve ser usada apenas pela
+     * thread que a obteve.
+     */
+    XPathExpression expression() {
+        Compiled c = compiled.get();
+        int generation = XMLFactories.generation();
+        if (c == null || c.generation != generation) {
+            try {
+                c = new Compiled(generation, XMLFactories.xpath().compile(expression));
+            } catch (XPathExpressionException ex) {
+                throw new XMLException("Expressão XPath inválida: [" + expression + "].", ex);
+            }
+            compiled.set(c);
+        }
+        return c.expression;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static final class Compiled {
+
+        final int generation;
+        final XPathExpression expression;
+
+        Compiled(int generation, XPathExpression expression) {
+            this.generation = generation;
+            this.expression = expression;
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package br.com.paulork.xmlutils.bind;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Associa o campo a um atributo do elemento ligado pelo {@link XMLBinder}.
+ * O campo deve ser de um tipo simples.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface XMLAttribute {
+
+    /**
+     * @return Nome do atributo. Quando vazio é usado o nome do campo.
+     */
+    String value() default "";
+}
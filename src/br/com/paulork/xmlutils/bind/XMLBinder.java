@@ -0,0 +1,437 @@
+package br.com.paulork.xmlutils.bind;
+
+import br.com.paulork.exceptions.XMLException;
+import br.com.paulork.xmlutils.XMLUtils;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Preenche objetos a partir de elementos do XML, conforme as anotações
+ * {@link XMLTag} e {@link XMLAttribute} dos campos da classe.
+ *
+ * O mapeamento de cada classe é montado uma única vez (na primeira chamada de
+ * {@link #of(Class)}) e guardado em um ClassValue: a reflexão é usada apenas
+ * nesse momento, para obter um MethodHandle de escrita de cada campo. Cada
+ * elemento é lido em uma única passagem pelos seus atributos e tags filhas, e
+ * campos primitivos são convertidos sem boxing.
+ *
+ * <pre>{@code
+ * public class Nota {
+ *     @XMLAttribute private int numero;
+ *     @XMLTag private String emitente;
+ *     @XMLTag("cnpj") private long documento;
+ *     @XMLTag private Item item;
+ * }
+ *
+ * List<Nota> notas = XMLBinder.of(Nota.class).bindAll(xml, "nota");
+ * }</pre>
+ *
+ * Tipos simples suportados: String, primitivos e seus wrappers, BigDecimal e
+ * enums. Campos de outros tipos anotados com {@link XMLTag} são ligados
+ * recursivamente à tag filha. As classes precisam de um construtor sem
+ * argumentos (pode ser privado). Quando uma tag se repete, vale a primeira
+ * ocorrência, como em {@link XMLUtils#getValue(java.lang.String)}.
+ *
+ * @param <T> Tipo dos objetos.
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public final class XMLBinder<T> {
+
+    private static final ClassValue<XMLBinder<?>> BINDERS = new ClassValue<XMLBinder<?>>() {
+        @Override
+        protected XMLBinder<?> computeValue(Class<?> type) {
+            return new XMLBinder<Object>(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final MethodHandle constructor;
+    private final Map<String, Slot> tags;
+    private final Map<String, Slot> attributes;
+    private final int slots;
+
+    /**
+     * Retorna o binder da classe, criando-o na primeira chamada.
+     *
+     * @param <T> Tipo dos objetos.
+     * @param type Classe com campos anotados.
+     * @return O binder da classe.
+     * @throws XMLException Se a classe não puder ser mapeada.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> XMLBinder<T> of(Class<T> type) {
+        return (XMLBinder<T>) BINDERS.get(type);
+    }
+
+    private XMLBinder(Class<?> type) {
+        this.type = type;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Constructor<?> ctor = type.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            this.constructor = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException ex) {
+            throw new XMLException("A classe " + type.getName() + " precisa de um construtor sem argumentos acessível.", ex);
+        }
+        Map<String, Slot> tagSlots = new HashMap<String, Slot>();
+        Map<String, Slot> attributeSlots = new HashMap<String, Slot>();
+        int count = 0;
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                XMLTag tag = field.getAnnotation(XMLTag.class);
+                XMLAttribute attribute = field.getAnnotation(XMLAttribute.class);
+                if (tag == null && attribute == null) {
+                    continue;
+                }
+                if (tag != null && attribute != null) {
+                    throw new XMLException("O campo " + field + " não pode ser tag e atributo ao mesmo tempo.");
+                }
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                    throw new XMLException("O campo " + field + " não pode ser static ou final.");
+                }
+                String name = tag != null ? tag.value() : attribute.value();
+                if (name.isEmpty()) {
+                    name = field.getName();
+                }
+                Slot slot = slot(lookup, field, count, attribute != null);
+                Slot previous = (tag != null ? tagSlots : attributeSlots).putIfAbsent(name, slot);
+                if (previous != null) {
+                    throw new XMLException("O nome \"" + name + "\" está associado a mais de um campo em " + type.getName() + ".");
+                }
+                count++;
+            }
+        }
+        if (count == 0) {
+            throw new XMLException("A classe " + type.getName() + " não possui campos anotados com @XMLTag ou @XMLAttribute.");
+        }
+        this.tags = tagSlots;
+        this.attributes = attributeSlots;
+        this.slots = count;
+    }
+
+    /**
+     * Cria o objeto e preenche os campos a partir do elemento.
+     *
+     * @param element Elemento do XML.
+     * @return O objeto preenchido.
+     * @throws XMLException Se um valor não puder ser convertido.
+     */
+    @SuppressWarnings("unchecked")
+    public T bind(Element element) {
+        Object target;
+        try {
+            target = constructor.invokeExact();
+        } catch (Throwable ex) {
+            throw new XMLException("Erro ao criar uma instância de " + type.getName() + ".", ex);
+        }
+        // Campos já preenchidos (vale a primeira ocorrência de cada tag)
+        boolean[] filled = new boolean[slots];
+        if (!attributes.isEmpty()) {
+            NamedNodeMap attrs = element.getAttributes();
+            for (int i = 0, n = attrs.getLength(); i < n; i++) {
+                Node attr = attrs.item(i);
+                Slot slot = attributes.get(attr.getNodeName());
+                if (slot != null) {
+                    fill(slot, target, attr, filled);
+                }
+            }
+        }
+        if (!tags.isEmpty()) {
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    Slot slot = tags.get(child.getNodeName());
+                    if (slot != null && !filled[slot.index]) {
+                        fill(slot, target, child, filled);
+                    }
+                }
+            }
+        }
+        return (T) target;
+    }
+
+    /**
+     * Cria o objeto a partir da ocorrência "index" da tag.
+     *
+     * @param xml XML de origem.
+     * @param tag Nome da tag.
+     * @param index Indice da ocorrência.
+     * @return O objeto preenchido.
+     * @throws XMLException Se a ocorrência da tag não existir ou se o XML não
+     * puder ser lido.
+     */
+    public T bind(XMLUtils xml, String tag, int index) {
+        List<T> result = new ArrayList<T>(1);
+        boolean found;
+        try {
+            found = xml.visitElement(tag, index, e -> result.add(bind(e)));
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new XMLException("Erro ao ler a tag [" + tag + "].", ex);
+        }
+        if (!found) {
+            throw new XMLException("A tag [" + tag + "] não possui a ocorrência " + index + ".");
+        }
+        return result.get(0);
+    }
+
+    /**
+     * Cria um objeto para cada ocorrência da tag, na ordem do documento.
+     *
+     * @param xml XML de origem.
+     * @param tag Nome da tag.
+     * @return Lista com os objetos (vazia se a tag não existir).
+     */
+    public List<T> bindAll(XMLUtils xml, String tag) {
+        List<T> result = new ArrayList<T>();
+        try {
+            xml.forEachElement(tag, e -> result.add(bind(e)));
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new XMLException("Erro ao ler a tag [" + tag + "].", ex);
+        }
+        return result;
+    }
+
+    private static void fill(Slot slot, Object target, Node node, boolean[] filled) {
+        try {
+            slot.set(target, node);
+        } catch (XMLException ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new XMLException("Valor inválido para o campo " + slot.field + ": \"" + node.getTextContent() + "\".", ex);
+        }
+        filled[slot.index] = true;
+    }
+
+    /**
+     * Cria o Slot de escrita do campo conforme o seu tipo.
+     */
+    private static Slot slot(MethodHandles.Lookup lookup, Field field, int index, boolean attribute) {
+        MethodHandle setter;
+        try {
+            field.setAccessible(true);
+            setter = lookup.unreflectSetter(field);
+        } catch (IllegalAccessException | RuntimeException ex) {
+            throw new XMLException("O campo " + field + " não está acessível.", ex);
+        }
+        String name = field.getDeclaringClass().getSimpleName() + "." + field.getName();
+        Class<?> t = field.getType();
+        if (t == String.class) {
+            return new ObjectSlot(name, index, setter, null);
+        } else if (t == int.class) {
+            return new IntSlot(name, index, setter);
+        } else if (t == long.class) {
+            return new LongSlot(name, index, setter);
+        } else if (t == double.class) {
+            return new DoubleSlot(name, index, setter);
+        } else if (t == boolean.class) {
+            return new BooleanSlot(name, index, setter);
+        } else if (t == float.class) {
+            return new FloatSlot(name, index, setter);
+        } else if (t == short.class || t == byte.class || t == char.class) {
+            throw new XMLException("O tipo do campo " + field + " não é suportado.");
+        } else if (t == Integer.class) {
+            return new ObjectSlot(name, index, setter, text -> Integer.valueOf(text.trim()));
+        } else if (t == Long.class) {
+            return new ObjectSlot(name, index, setter, text -> Long.valueOf(text.trim()));
+        } else if (t == Double.class) {
+            return new ObjectSlot(name, index, setter, text -> Double.valueOf(text.trim()));
+        } else if (t == Boolean.class) {
+            return new ObjectSlot(name, index, setter, text -> Boolean.valueOf(text.trim()));
+        } else if (t == Float.class) {
+            return new ObjectSlot(name, index, setter, text -> Float.valueOf(text.trim()));
+        } else if (t == BigDecimal.class) {
+            return new ObjectSlot(name, index, setter, text -> new BigDecimal(text.trim()));
+        } else if (t.isEnum()) {
+            return new ObjectSlot(name, index, setter, text -> enumValue(t, text.trim()));
+        } else if (attribute || t.isPrimitive() || t.isArray() || t.isInterface()) {
+            throw new XMLException("O tipo do campo " + field + " não é suportado.");
+        }
+        return new NestedSlot(name, index, setter, t);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<?> type, String text) {
+        return Enum.valueOf((Class) type, text);
+    }
+
+    /**
+     * Escrita de um campo. Os MethodHandles são adaptados para receber o
+     * objeto como Object, permitindo chamadas com invokeExact.
+     */
+    private abstract static class Slot {
+
+        final String field;
+        final int index;
+
+        Slot(String field, int index) {
+            this.field = field;
+            this.index = index;
+        }
+
+        abstract void set(Object target, Node node) throws Throwable;
+
+        static MethodHandle adapt(MethodHandle setter, Class<?> value) {
+            return setter.asType(MethodType.methodType(void.class, Object.class, value));
+        }
+
+        /**
+         * Texto do atributo ou da tag, ou null se vazio (o campo primitivo
+         * mantém o valor padrão).
+         */
+        static String text(Node node) {
+            String text = node.getTextContent().trim();
+            return text.isEmpty() ? null : text;
+        }
+    }
+
+    private static final class ObjectSlot extends Slot {
+
+        private final MethodHandle setter;
+        // Conversão do texto; null para campos String
+        private final Function<String, Object> converter;
+
+        ObjectSlot(String field, int index, MethodHandle setter, Function<String, Object> converter) {
+            super(field, index);
+            this.setter = adapt(setter, Object.class);
+            this.converter = converter;
+        }
+
+        @Override
+        void set(Object target, Node node) throws Throwable {
+            String text = node.getTextContent();
+            if (converter == null) {
+                setter.invokeExact(target, (Object) text);
+            } else if (!text.trim().isEmpty()) {
+                setter.invokeExact(target, converter.apply(text));
+            }
+        }
+    }
+
+    private static final class IntSlot extends Slot {
+
+        private final MethodHandle setter;
+
+        IntSlot(String field, int index, MethodHandle setter) {
+            super(field, index);
+            this.setter = adapt(setter, int.class);
+        }
+
+        @Override
+        void set(Object target, Node node) throws Throwable {
+            String text = text(node);
+            if (text != null) {
+                setter.invokeExact(target, Integer.parseInt(text));
+            }
+        }
+    }
+
+    private static final class LongSlot extends Slot {
+
+        private final MethodHandle setter;
+
+        LongSlot(String field, int index, MethodHandle setter) {
+            super(field, index);
+            this.setter = adapt(setter, long.class);
+        }
+
+        @Override
+        void set(Object target, Node node) throws Throwable {
+            String text = text(node);
+            if (text != null) {
+                setter.invokeExact(target, Long.parseLong(text));
+            }
+        }
+    }
+
+    private static final class DoubleSlot extends Slot {
+
+        private final MethodHandle setter;
+
+        DoubleSlot(String field, int index, MethodHandle setter) {
+            super(field, index);
+            this.setter = adapt(setter, double.class);
+        }
+
+        @Override
+        void set(Object target, Node node) throws Throwable {
+            String text = text(node);
+            if (text != null) {
+                setter.invokeExact(target, Double.parseDouble(text));
+            }
+        }
+    }
+
+    private static final class FloatSlot extends Slot {
+
+        private final MethodHandle setter;
+
+        FloatSlot(String field, int index, MethodHandle setter) {
+            super(field, index);
+            this.setter = adapt(setter, float.class);
+        }
+
+        @Override
+        void set(Object target, Node node) throws Throwable {
+            String text = text(node);
+            if (text != null) {
+                setter.invokeExact(target, Float.parseFloat(text));
+            }
+        }
+    }
+
+    private static final class BooleanSlot extends Slot {
+
+        private final MethodHandle setter;
+
+        BooleanSlot(String field, int index, MethodHandle setter) {
+            super(field, index);
+            this.setter = adapt(setter, boolean.class);
+        }
+
+        @Override
+        void set(Object target, Node node) throws Throwable {
+            String text = text(node);
+            if (text != null) {
+                setter.invokeExact(target, Boolean.parseBoolean(text));
+            }
+        }
+    }
+
+    /**
+     * Campo ligado recursivamente à tag filha. O binder do tipo é obtido a
+     * cada uso (consulta ao ClassValue), o que permite tipos recursivos.
+     */
+    private static final class NestedSlot extends Slot {
+
+        private final MethodHandle setter;
+        private final Class<?> type;
+
+        NestedSlot(String field, int index, MethodHandle setter, Class<?> type) {
+            super(field, index);
+            this.setter = adapt(setter, Object.class);
+            this.type = type;
+        }
+
+        @Override
+        void set(Object target, Node node) throws Throwable {
+            setter.invokeExact(target, (Object) of(type).bind((Element) node));
+        }
+    }
+
+}
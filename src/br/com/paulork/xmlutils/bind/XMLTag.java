@@ -0,0 +1,25 @@
+package br.com.paulork.xmlutils.bind;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Associa o campo a uma tag filha do elemento ligado pelo
+ * {@link XMLBinder}. Campos de tipos simples recebem o texto da tag; campos
+ * de outros tipos são ligados recursivamente à tag filha.
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface XMLTag {
+
+    /**
+     * @return Nome da tag. Quando vazio é usado o nome do campo.
+     */
+    String value() default "";
+}
@@ -0,0 +1,87 @@
+package br.com.paulork.xmlutils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+public class CompactDocumentTest {
+
+    private static CompactDocument parse(String xml, boolean offHeap) throws Exception {
+        return CompactDocument.parse(new InputSource(new ByteArrayInputStream(xml.getBytes("UTF-8"))), offHeap);
+    }
+
+    @Test
+    public void testStructure() throws Exception {
+        CompactDocument doc = parse("<a><!-- c --><b>1<![CDATA[<2>]]></b>x<c><b>3</b></c>y</a>", false);
+        assertEquals(4, doc.size());
+        assertArrayEquals(new int[]{1, 3}, doc.elements("b"));
+        assertEquals(2, doc.occurrences("b", true));
+        assertEquals(0, doc.occurrences("a", true));
+        assertEquals(4, doc.elements("*").length);
+        assertEquals("1<2>x3y", doc.text(0));
+        assertEquals("1<2>", doc.text(1));
+        assertEquals("", parse("<a><b/></a>", true).text(1));
+        // Filhos de "a"
+        int child = 1;
+        assertEquals("b", doc.name(child));
+        child = doc.end(child);
+        assertEquals("c", doc.name(child));
+        assertEquals(doc.end(0), doc.end(child));
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        CompactDocument doc = parse("<a xmlns=\"urn:a\" xmlns:p=\"urn:p\" z=\"1\" p:b=\"2\" m=\"&lt;3\"><p:b/></a>", true);
+        // Mesma ordem do NamedNodeMap do DOM (por nome)
+        String[] names = new String[doc.attributeCount(0)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = doc.attributeName(0, i);
+        }
+        assertArrayEquals(new String[]{"m", "p:b", "xmlns", "xmlns:p", "z"}, names);
+        assertEquals("<3", doc.attributeValue(0, 0));
+        assertEquals("2", doc.attribute(0, "p:b"));
+        assertEquals("1", doc.attribute(0, "z"));
+        assertNull(doc.attribute(0, "y"));
+        assertEquals(0, doc.attributeCount(1));
+        assertArrayEquals(new int[]{1}, doc.elements("p:b"));
+    }
+
+    @Test
+    public void testToDocument() throws Exception {
+        String xml = "<a k=\"v\">t1<b>1</b>t2<c><d x=\"y\">2</d>t3</c>t4</a>";
+        CompactDocument doc = parse(xml, false);
+        Document dom = doc.toDocument(0);
+        assertEquals(xml, new XMLUtils(dom).docToStr(dom, false, true));
+        Document sub = doc.toDocument(2);
+        assertEquals("<c><d x=\"y\">2</d>t3</c>", new XMLUtils(sub).docToStr(sub, false, true));
+    }
+
+    @Test
+    public void testParse_SystemId() throws Exception {
+        // Entidade externa relativa ao arquivo, lida com a codificação
+        // informada (o XML não tem declaração)
+        File dir = Files.createTempDirectory("xmlutils").toFile();
+        dir.deleteOnExit();
+        File entity = new File(dir, "ent.txt");
+        entity.deleteOnExit();
+        Files.write(entity.toPath(), "externo".getBytes("UTF-8"));
+        File file = new File(dir, "doc.xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "<!DOCTYPE r [<!ENTITY e SYSTEM \"ent.txt\">]><r><a>&e; ação</a></r>".getBytes("ISO-8859-1"));
+
+        XMLUtils xml = new XMLUtils(file, XMLUtils.LoadMode.STREAM, XMLUtils.Storage.COMPACT, XMLUtils.ISO_8859_1);
+        assertEquals("externo ação", xml.getValue("a"));
+        assertEquals("externo ação", new XMLUtils(file, XMLUtils.ISO_8859_1).getValue("a"));
+    }
+
+    @Test(expected = SAXException.class)
+    public void testParse_Invalid() throws Exception {
+        parse("<a><b></a>", false);
+    }
+
+}
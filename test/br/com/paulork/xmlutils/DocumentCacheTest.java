@@ -0,0 +1,72 @@
+package br.com.paulork.xmlutils;
+
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DocumentCacheTest {
+
+    @Test
+    public void testOpen() throws Exception {
+        DocumentCache cache = new DocumentCache(1024 * 1024);
+        File file = XMLUtilsTest.writeTemp("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><config><nome>ação</nome></config>", "ISO-8859-1");
+
+        XMLUtils first = cache.open(file);
+        XMLUtils second = cache.open(file);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(file.length(), cache.getBytes());
+        assertEquals("ação", second.getValue("nome"));
+        assertEquals(XMLUtils.ISO_8859_1, second.getCharset());
+        assertSame(file, second.getFile());
+
+        // Cada XMLUtils tem a sua própria cópia
+        second.setValue("nome", "alterado");
+        assertEquals("ação", first.getValue("nome"));
+        assertEquals("ação", cache.open(file).getValue("nome"));
+
+        // O arquivo alterado no disco é lido novamente
+        XMLUtilsTest.rewrite(file, "<config><nome>novo</nome></config>");
+        assertEquals("novo", cache.open(file).getValue("nome"));
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.size());
+
+        cache.invalidate(file);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        File a = XMLUtilsTest.writeTemp("<a>" + pad(400) + "</a>", "UTF-8");
+        File b = XMLUtilsTest.writeTemp("<b>" + pad(400) + "</b>", "UTF-8");
+        File big = XMLUtilsTest.writeTemp("<c>" + pad(2000) + "</c>", "UTF-8");
+        DocumentCache cache = new DocumentCache(1000);
+
+        cache.open(a);
+        cache.open(b);
+        assertEquals(2, cache.size());
+        // "a" passa a ser a mais recente, então "b" é descartada
+        cache.open(a);
+        cache.open(XMLUtilsTest.writeTemp("<d>" + pad(400) + "</d>", "UTF-8"));
+        assertEquals(1, cache.getEvictions());
+        cache.open(a);
+        assertEquals(2, cache.getHits());
+        cache.open(b);
+        assertEquals(4, cache.getMisses());
+
+        // Maior que o limite: não é guardado
+        cache.open(big);
+        assertTrue(cache.getBytes() <= 1000);
+        assertNotNull(XMLUtils.cached(a).getDocument());
+    }
+
+    private static String pad(int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,44 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ExtractionPlanTest {
+
+    @Test
+    public void testKeys() {
+        ExtractionPlan plan = new ExtractionPlan("a", "b/c", "a", "/r/d/@x");
+        assertArrayEquals(new String[]{"a", "b/c", "/r/d/@x"}, plan.getKeys());
+        assertEquals(3, plan.size());
+        assertNull(plan.attribute(0));
+        assertEquals("x", plan.attribute(2));
+    }
+
+    @Test
+    public void testInvalidKeys() {
+        for (String key : new String[]{"", "a//b", "@x", "a/@", "a/@x/b", "/"}) {
+            try {
+                new ExtractionPlan(key);
+                fail("Chave inválida aceita: " + key);
+            } catch (XMLException ex) {
+                // esperado
+            }
+        }
+    }
+
+    @Test
+    public void testMatcher() {
+        ExtractionPlan plan = new ExtractionPlan("c", "b/c", "/a/c");
+        ExtractionPlan.Matcher matcher = plan.matcher();
+        assertNull(matcher.start("a"));
+        assertArrayEquals(new int[]{0, 2}, matcher.start("c"));
+        matcher.end();
+        assertNull(matcher.start("b"));
+        assertArrayEquals(new int[]{0, 1}, matcher.start("c"));
+        matcher.end();
+        matcher.end();
+        matcher.end();
+    }
+
+}
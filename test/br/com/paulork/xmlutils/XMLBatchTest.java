@@ -0,0 +1,97 @@
+package br.com.paulork.xmlutils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XMLBatchTest {
+
+    File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("xmlbatch").toFile();
+        dir.deleteOnExit();
+        for (int i = 0; i < 40; i++) {
+            write(new File(dir, "nota" + i + ".xml"), "<nota><numero>" + i + "</numero><valor>1.00</valor></nota>");
+        }
+        write(new File(dir, "invalido.xml"), "<nota><numero>");
+        write(new File(dir, "ignorado.txt"), "texto");
+    }
+
+    @Test
+    public void testProcess_Dir() throws Exception {
+        final ConcurrentHashMap<String, String> numeros = new ConcurrentHashMap<String, String>();
+        try (XMLBatch batch = new XMLBatch(4)) {
+            XMLBatch.Report report = batch.process(dir, xml -> xml.getValue("numero"),
+                    (file, numero) -> numeros.put(file.getName(), numero));
+            assertEquals(40, report.getFiles());
+            assertEquals(1, report.getFailures());
+            assertTrue(report.getErrors().containsKey(new File(dir, "invalido.xml")));
+            assertTrue(report.getBytes() > 0);
+        }
+        assertEquals(40, numeros.size());
+        assertEquals("7", numeros.get("nota7.xml"));
+    }
+
+    @Test
+    public void testProcess_Mutation() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 10; i++) {
+            files.add(new File(dir, "nota" + i + ".xml"));
+        }
+        try (XMLBatch batch = new XMLBatch(2)) {
+            XMLBatch.Report report = batch.process(files, xml -> {
+                xml.setValue("valor", "2.00");
+                xml.save();
+                return null;
+            }, null);
+            assertEquals(10, report.getFiles());
+        }
+        assertEquals("2.00", new XMLUtils(new File(dir, "nota3.xml")).getValue("valor"));
+        assertEquals("1.00", new XMLUtils(new File(dir, "nota30.xml")).getValue("valor"));
+    }
+
+    @Test
+    public void testProcess_Backpressure() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try (Stream<Path> paths = Files.list(dir.toPath()).filter(p -> p.toString().endsWith(".xml"))) {
+            XMLBatch batch = new XMLBatch(executor);
+            batch.setMaxInFlight(3);
+            XMLBatch.Report report = batch.process(paths, xml -> {
+                int now = running.incrementAndGet();
+                max.accumulateAndGet(now, Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return null;
+            }, null);
+            assertEquals(40, report.getFiles());
+            assertTrue(max.get() <= 3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static void write(File file, String content) throws Exception {
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(content);
+        }
+    }
+
+}
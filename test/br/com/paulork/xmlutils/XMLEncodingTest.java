@@ -0,0 +1,57 @@
+package br.com.paulork.xmlutils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Paulo R. Kraemer <paulork10@gmail.com>
+ */
+public class XMLEncodingTest {
+
+    private static String detect(byte[] b) {
+        return XMLEncoding.detect(b, b.length);
+    }
+
+    @Test
+    public void testDetect_Bom() {
+        assertEquals("UTF-8", detect(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '<', 'a', '/', '>'}));
+        assertEquals("UTF-16BE", detect(new byte[]{(byte) 0xFE, (byte) 0xFF, 0, '<'}));
+        assertEquals("UTF-16LE", detect(new byte[]{(byte) 0xFF, (byte) 0xFE, '<', 0}));
+        assertEquals("UTF-32BE", detect(new byte[]{0, 0, (byte) 0xFE, (byte) 0xFF}));
+        assertEquals("UTF-16LE", detect("<?xml version=\"1.0\"?>".getBytes(StandardCharsets.UTF_16LE)));
+        assertEquals("UTF-16BE", detect("<?xml version=\"1.0\"?>".getBytes(StandardCharsets.UTF_16BE)));
+    }
+
+    @Test
+    public void testDetect_Declaration() {
+        assertEquals("ISO-8859-1", detect("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a/>".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("windows-1252", detect("<?xml version='1.0' encoding = 'windows-1252' ?><a/>".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("UTF-8", detect("<?xml version=\"1.0\"?><a/>".getBytes(StandardCharsets.US_ASCII)));
+        assertNull(detect("<a/>".getBytes(StandardCharsets.US_ASCII)));
+        assertNull(detect("<?xml-stylesheet href=\"a.xsl\"?><a/>".getBytes(StandardCharsets.US_ASCII)));
+        assertNull(detect(new byte[0]));
+    }
+
+    @Test
+    public void testDetect_Stream() throws Exception {
+        byte[] xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a/>".getBytes(StandardCharsets.US_ASCII);
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(xml));
+        assertEquals("ISO-8859-1", XMLEncoding.detect(in));
+        // Os bytes não são consumidos
+        assertEquals('<', in.read());
+    }
+
+    @Test
+    public void testIsDefault() {
+        assertTrue(XMLEncoding.isDefault("utf-8"));
+        assertTrue(XMLEncoding.isDefault("US-ASCII"));
+        assertFalse(XMLEncoding.isDefault("ISO-8859-1"));
+        assertFalse(XMLEncoding.isDefault("nao-existe"));
+    }
+
+}
@@ -0,0 +1,48 @@
+package br.com.paulork.xmlutils;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XMLFactoriesTest {
+
+    @After
+    public void tearDown() {
+        XMLFactories.setDocumentBuilderFactory((DocumentBuilderFactory) null);
+    }
+
+    @Test
+    public void testDocumentBuilder_SameThread() {
+        DocumentBuilder first = XMLFactories.documentBuilder();
+        DocumentBuilder second = XMLFactories.documentBuilder();
+        assertSame(first, second);
+    }
+
+    @Test
+    public void testDocumentBuilder_OtherThread() throws Exception {
+        final DocumentBuilder[] other = new DocumentBuilder[1];
+        Thread thread = new Thread(() -> other[0] = XMLFactories.documentBuilder());
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(XMLFactories.documentBuilder(), other[0]);
+    }
+
+    @Test
+    public void testSetDocumentBuilderFactory() throws Exception {
+        DocumentBuilder before = XMLFactories.documentBuilder();
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XMLFactories.setDocumentBuilderFactory(factory);
+        DocumentBuilder after = XMLFactories.documentBuilder();
+        assertNotSame(before, after);
+        assertTrue(after.isNamespaceAware());
+
+        XMLUtils xml = new XMLUtils(new StringBuilder("<a xmlns=\"urn:teste\"><b>1</b></a>"));
+        assertEquals("urn:teste", xml.getDocument().getDocumentElement().getNamespaceURI());
+        assertEquals("1", xml.getValue("b"));
+    }
+
+}
@@ -0,0 +1,105 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XMLPatcherTest {
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+            + "<lote xmlns:x=\"urn:x\">\n"
+            + "  <!-- notas -->\n"
+            + "  <nota numero=\"1\"><cnpj>111</cnpj><obs>a &amp; b</obs><item><cnpj>999</cnpj></item></nota>\n"
+            + "  <nota numero=\"2\"><cnpj>222</cnpj><obs><![CDATA[<obs>]]></obs><x:ext>ação</x:ext></nota>\n"
+            + "</lote>";
+
+    @Test
+    public void testApply() throws Exception {
+        File source = XMLUtilsTest.writeTemp(XML, "ISO-8859-1");
+        File target = File.createTempFile("xmlutils", ".xml");
+        target.deleteOnExit();
+
+        new XMLPatcher()
+                .setValue("cnpj", 2, "333")
+                .setValue("/lote/nota/cnpj", 0, "<novo>")
+                .setCDATA("obs", 0, "açúcar")
+                .removeTag("item", 0)
+                .apply(source, target);
+
+        XMLUtils xml = new XMLUtils(target);
+        assertEquals(XMLUtils.ISO_8859_1, xml.getCharset());
+        // O indice por nome conta também a tag "cnpj" do item
+        assertArrayEquals(new String[]{"<novo>", "333"}, xml.getValues("cnpj"));
+        assertEquals("açúcar", xml.getValue("obs"));
+        assertEquals(0, (int) xml.getNumOccur("item"));
+        assertEquals("ação", xml.getValue("x:ext"));
+        assertEquals("2", xml.getMapAttributes("nota", 1).get("numero"));
+
+        String content = new String(Files.readAllBytes(target.toPath()), "ISO-8859-1");
+        assertTrue(content.contains("<!-- notas -->"));
+        assertTrue(content.contains("<obs><![CDATA[açúcar]]></obs>"));
+        assertTrue(content.contains("<obs><![CDATA[<obs>]]></obs>"));
+        assertTrue(content.contains("xmlns:x=\"urn:x\""));
+    }
+
+    @Test
+    public void testApply_InPlace() throws Exception {
+        File file = XMLUtilsTest.writeTemp(XML, "ISO-8859-1");
+        new XMLPatcher().setValue("cnpj", "000").removeTag("nota", 1).apply(file);
+        XMLUtils xml = new XMLUtils(file);
+        assertEquals("000", xml.getValue("cnpj"));
+        assertEquals(1, (int) xml.getNumOccur("nota"));
+    }
+
+    @Test
+    public void testApply_Missing() throws Exception {
+        File file = XMLUtilsTest.writeTemp(XML, "ISO-8859-1");
+        long length = file.length();
+        try {
+            new XMLPatcher().setValue("cnpj", "000").setValue("nota", 5, "x").apply(file);
+            fail();
+        } catch (XMLException ex) {
+            assertTrue(ex.getMessage().contains("nota"));
+        }
+        // O arquivo original é mantido
+        assertEquals(length, file.length());
+        assertEquals("111", new XMLUtils(file).getValue("cnpj"));
+    }
+
+    @Test
+    public void testApply_Overlap() throws Exception {
+        File file = XMLUtilsTest.writeTemp(XML, "ISO-8859-1");
+        long length = file.length();
+        // A segunda "cnpj" está dentro da "nota" 0, que é substituída
+        try {
+            new XMLPatcher().setValue("nota", 0, "x").setValue("cnpj", 1, "000").apply(file);
+            fail();
+        } catch (XMLException ex) {
+            assertTrue(ex.getMessage().contains("[cnpj] (ocorrência 1)"));
+        }
+        // Dentro de uma tag removida
+        try {
+            new XMLPatcher().removeTag("item", 0).setCDATA("cnpj", 1, "000").apply(file);
+            fail();
+        } catch (XMLException ex) {
+            assertTrue(ex.getMessage().contains("[cnpj] (ocorrência 1)"));
+        }
+        // A mesma tag pelo nome e pelo caminho
+        try {
+            new XMLPatcher().setValue("cnpj", 0, "000").setValue("/lote/nota/cnpj", 0, "111").apply(file);
+            fail();
+        } catch (XMLException ex) {
+            assertTrue(ex.getMessage().contains("[/lote/nota/cnpj] (ocorrência 0)"));
+        }
+        // O arquivo original é mantido
+        assertEquals(length, file.length());
+        assertEquals("111", new XMLUtils(file).getValue("cnpj"));
+
+        // Sem sobreposição as alterações continuam válidas
+        new XMLPatcher().setValue("cnpj", 0, "000").setValue("/lote/nota/cnpj", 1, "333").apply(file);
+        assertArrayEquals(new String[]{"000", "999", "333"}, new XMLUtils(file).getValues("cnpj"));
+    }
+
+}
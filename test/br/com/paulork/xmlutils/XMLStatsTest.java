@@ -0,0 +1,60 @@
+package br.com.paulork.xmlutils;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XMLStatsTest {
+
+    @Test
+    public void testRecord() {
+        XMLStats stats = new XMLStats();
+        for (int i = 0; i < 99; i++) {
+            stats.record(XMLMetrics.Operation.QUERY, 1000, 0);
+        }
+        stats.record(XMLMetrics.Operation.QUERY, 5000000, 0);
+        stats.record(XMLMetrics.Operation.PARSE, 2000000, 4096);
+        stats.record(XMLMetrics.Operation.WRITE, 3000000, 1024);
+        stats.reloaded();
+        stats.flushed();
+        stats.flushed();
+
+        XMLStats.Snapshot query = stats.getQuery();
+        assertEquals(100, query.getCount());
+        assertEquals(5.0, query.getMaxMillis(), 0.0001);
+        // Limite superior da faixa de 1000 ns (512 a 1023 ns)
+        assertEquals(0.001023, query.getP50Millis(), 0.0000001);
+        assertEquals(0.001023, query.getP99Millis(), 0.0000001);
+        assertEquals((99 * 1000 + 5000000) / 1e6 / 100, query.getMeanMillis(), 0.0001);
+        assertEquals(4096, stats.getBytesRead());
+        assertEquals(1024, stats.getBytesWritten());
+        assertEquals(1, stats.getReloads());
+        assertEquals(2, stats.getFlushes());
+        assertEquals(0, stats.getMutate().getCount());
+
+        stats.reset();
+        assertEquals(0, stats.getQuery().getCount());
+        assertEquals(0, stats.getQuery().getP99Millis(), 0);
+        assertEquals(0, stats.getBytesRead());
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        XMLStats stats = new XMLStats();
+        ObjectName name = stats.register("teste");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            stats.record(XMLMetrics.Operation.PARSE, 1500, 10);
+            assertEquals(10L, server.getAttribute(name, "BytesRead"));
+            CompositeData parse = (CompositeData) server.getAttribute(name, "Parse");
+            assertEquals(1L, parse.get("count"));
+        } finally {
+            stats.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+}
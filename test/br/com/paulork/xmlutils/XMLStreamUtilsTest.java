@@ -0,0 +1,96 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.io.File;
+import java.util.HashMap;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XMLStreamUtilsTest {
+
+    XMLStreamUtils xml;
+
+    @Before
+    public void setUp() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<teste>");
+        sb.append("  <cod>001</cod>");
+        sb.append("  <msg>Hello world 1</msg>");
+        sb.append("  <cod>002</cod>");
+        sb.append("  <msg><![CDATA[Hello <world> 2]]></msg>");
+        sb.append("  <cod>003</cod>");
+        sb.append("  <inner>");
+        sb.append("    <str charset=\"utf-8\">String de teste 1</str>");
+        sb.append("    <num>10</num>");
+        sb.append("  </inner>");
+        sb.append("</teste>");
+        File file = XMLUtilsTest.writeTemp(sb.toString(), "UTF-8");
+        xml = new XMLStreamUtils(file);
+    }
+
+    @Test
+    public void testGetValue() {
+        assertEquals("001", xml.getValue("cod"));
+        assertEquals("String de teste 1", xml.getValue("str"));
+        assertNull(xml.getValue("inexistente"));
+    }
+
+    @Test
+    public void testGetValues() {
+        assertArrayEquals(new String[]{"001", "002", "003"}, xml.getValues("cod"));
+        assertArrayEquals(new String[]{"Hello world 1", "Hello <world> 2"}, xml.getValues("msg"));
+        assertEquals(0, xml.getValues("inexistente").length);
+    }
+
+    @Test
+    public void testGetAllValues() {
+        HashMap<String, String[]> result = xml.getAllValues("cod", "num", "inexistente");
+        assertArrayEquals(new String[]{"001", "002", "003"}, result.get("cod"));
+        assertArrayEquals(new String[]{"10"}, result.get("num"));
+        assertEquals(0, result.get("inexistente").length);
+    }
+
+    @Test
+    public void testExtract() {
+        ExtractionPlan plan = new ExtractionPlan("cod", "inner/str", "/teste/inner/str/@charset", "msg", "inexistente");
+        HashMap<String, String> first = xml.extractFirst(plan);
+        assertEquals("001", first.get("cod"));
+        assertEquals("String de teste 1", first.get("inner/str"));
+        assertEquals("utf-8", first.get("/teste/inner/str/@charset"));
+        assertEquals("Hello world 1", first.get("msg"));
+        assertFalse(first.containsKey("inexistente"));
+
+        HashMap<String, String[]> all = xml.extractAll(plan);
+        assertArrayEquals(new String[]{"001", "002", "003"}, all.get("cod"));
+        assertArrayEquals(new String[]{"Hello world 1", "Hello <world> 2"}, all.get("msg"));
+        assertEquals(0, all.get("inexistente").length);
+    }
+
+    @Test
+    public void testGetNumOccur() {
+        assertEquals(3, xml.getNumOccur("cod"));
+        assertEquals(0, xml.getNumOccur("teste"));
+    }
+
+    @Test
+    public void testGetMapChilds() {
+        HashMap<String, String> expResult = new HashMap<>();
+        expResult.put("str", "String de teste 1");
+        expResult.put("num", "10");
+        assertEquals(expResult, xml.getMapChilds("inner"));
+    }
+
+    @Test(expected = XMLException.class)
+    public void testGetMapChilds_Inexistente() {
+        xml.getMapChilds("inexistente");
+    }
+
+    @Test
+    public void testSameResultAsXMLUtils() throws Exception {
+        XMLUtils dom = new XMLUtils(xml.getFile());
+        assertArrayEquals(dom.getValues("msg"), xml.getValues("msg"));
+        assertEquals(dom.getMapChilds("teste"), xml.getMapChilds("teste"));
+    }
+
+}
@@ -0,0 +1,128 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XMLTemplateTest {
+
+    private static final String XML = "<mensagem>\n"
+            + "  <cabecalho versao=\"1.0\"><numero/><data>2014-01-01</data></cabecalho>\n"
+            + "  <corpo>\n"
+            + "    <item><valor>0</valor></item>\n"
+            + "    <item><valor>0</valor></item>\n"
+            + "    <obs/>\n"
+            + "  </corpo>\n"
+            + "</mensagem>";
+
+    @Test
+    public void testInstance() throws Exception {
+        XMLTemplate template = new XMLTemplate(XML);
+        int numero = template.slot("numero");
+        int valor = template.slot("valor", 1);
+        int versao = template.attributeSlot("cabecalho", 0, "versao");
+        int codigo = template.attributeSlot("item", 0, "codigo");
+        int obs = template.slot("obs");
+        assertEquals(5, template.getSlotCount());
+
+        XMLUtils xml = template.newInstance()
+                .set(numero, "123")
+                .set(valor, "9.90")
+                .set(versao, "2.0")
+                .set(codigo, "A1")
+                .setCDATA(obs, "<texto>")
+                .toXMLUtils();
+        assertEquals("123", xml.getValue("numero"));
+        assertArrayEquals(new String[]{"0", "9.90"}, xml.getValues("valor"));
+        assertEquals("2.0", xml.getMapAttributes("cabecalho").get("versao"));
+        assertEquals("A1", xml.getMapAttributes("item", 0).get("codigo"));
+        assertEquals("<texto>", xml.getValue("obs"));
+        assertEquals("2014-01-01", xml.getValue("data"));
+
+        // O modelo e as outras instâncias não são alterados
+        XMLUtils other = template.newInstance().toXMLUtils();
+        assertEquals("", other.getValue("numero"));
+        assertEquals("1.0", other.getMapAttributes("cabecalho").get("versao"));
+        assertTrue(template.newInstance().toString().contains("<item>"));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final XMLTemplate template = new XMLTemplate(XML);
+        final int numero = template.slot("numero");
+        final int versao = template.attributeSlot("cabecalho", 0, "versao");
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final String value = String.valueOf(t);
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 300; i++) {
+                        XMLUtils xml = template.newInstance().set(numero, value).set(versao, value).toXMLUtils();
+                        assertEquals(value, xml.getValue("numero"));
+                        assertEquals(value, xml.getMapAttributes("cabecalho").get("versao"));
+                        assertEquals(2, (int) xml.getNumOccur("item"));
+                    }
+                } catch (Throwable ex) {
+                    error.compareAndSet(null, ex);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        XMLTemplate template = new XMLTemplate(XML);
+        try {
+            template.slot("valor", 2);
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+        try {
+            template.newInstance().set(0, "x");
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+        // Slots dentro de um slot de valor
+        template.slot("cabecalho");
+        template.attributeSlot("cabecalho", 0, "versao");
+        try {
+            template.slot("numero");
+            fail();
+        } catch (XMLException ex) {
+            assertTrue(ex.getMessage().contains("[cabecalho]"));
+        }
+        template.attributeSlot("item", 0, "codigo");
+        try {
+            template.slot("corpo");
+            fail();
+        } catch (XMLException ex) {
+            assertTrue(ex.getMessage().contains("[corpo]"));
+        }
+        try {
+            template.attributeSlot("valor", 0, "moeda");
+            template.slot("item");
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+        assertEquals(4, template.getSlotCount());
+        try {
+            new XMLTemplate("<a>");
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+    }
+
+}
@@ -1,10 +1,21 @@
 package br.com.paulork.xmlutils;
 
+import br.com.paulork.exceptions.XMLException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 public class XMLUtilsTest {
 
@@ -152,4 +163,546 @@ public class XMLUtilsTest {
         assertEquals(expResult, result);
     }
 
+    @Test
+    public void testDocToStream() throws Exception {
+        String expResult = xml.docToStr(xml.getDocument(), true, false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        xml.docToStream(xml.getDocument(), out, true, false);
+        assertEquals(expResult, out.toString("UTF-8"));
+
+        StringWriter writer = new StringWriter();
+        xml.docToStream(xml.getDocument(), writer, true, false);
+        assertEquals(expResult, writer.toString());
+
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        xml.docToStream(xml.getDocument(), Channels.newChannel(channelOut), true, false);
+        assertEquals(expResult, channelOut.toString("UTF-8"));
+    }
+
+    @Test
+    public void testDocToStr_KeepsDocument() throws Exception {
+        XMLUtils xml = new XMLUtils(new StringBuilder("<a>\n  <b>1</b>\n  <c> <![CDATA[x]]> </c>\n</a>"));
+        Document doc = xml.getDocument();
+        int childs = doc.getDocumentElement().getChildNodes().getLength();
+        String str = xml.docToStr(doc, true, true);
+        assertEquals(childs, doc.getDocumentElement().getChildNodes().getLength());
+        assertEquals("\n  ", doc.getDocumentElement().getFirstChild().getNodeValue());
+        assertEquals(str, xml.docToStr(doc, true, true));
+        assertTrue(str.contains("\n    <b>1</b>\n"));
+        assertTrue(str.contains("<![CDATA[x]]>"));
+    }
+
+    @Test
+    public void testXPath() throws Exception {
+        assertEquals("002", xml.getValueByXPath("/teste/cod[2]"));
+        assertEquals("iso", xml.getValueByXPath("//str[2]/@charset"));
+        assertNull(xml.getValueByXPath("/teste/nao_existe"));
+        assertArrayEquals(new String[]{"String de teste 1", "String de teste 2"}, xml.getValuesByXPath("/teste/inner/str"));
+
+        XPathQuery query = XPathQuery.compile("//str[@charset='iso']");
+        xml.setValue(query, "alterado");
+        assertEquals("alterado", xml.getValue(query));
+        assertEquals("alterado", xml.getValues("str")[1]);
+
+        // A mesma consulta em outra instância
+        XMLUtils other = new XMLUtils(new StringBuilder("<x><str charset=\"iso\">outro</str></x>"));
+        assertEquals("outro", other.getValue(query));
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        XMLUtils xml = new XMLUtils(new StringBuilder("<a><b>1</b><c><b>2</b><d x=\"y\">3</d></c><c><b>4</b></c></a>"));
+        ExtractionPlan plan = new ExtractionPlan("b", "c/b", "/a/b", "d/@x", "a", "e");
+        HashMap<String, String> first = xml.extractFirst(plan);
+        assertEquals("1", first.get("b"));
+        assertEquals("2", first.get("c/b"));
+        assertEquals("1", first.get("/a/b"));
+        assertEquals("y", first.get("d/@x"));
+        assertEquals("1234", first.get("a"));
+        assertFalse(first.containsKey("e"));
+
+        HashMap<String, String[]> all = xml.extractAll(plan);
+        assertArrayEquals(xml.getValues("b"), all.get("b"));
+        assertArrayEquals(new String[]{"2", "4"}, all.get("c/b"));
+        assertArrayEquals(new String[]{"1"}, all.get("/a/b"));
+        assertEquals(0, all.get("e").length);
+    }
+
+    @Test
+    public void testGetSubDocument() throws Exception {
+        Document sub = xml.getSubDocument("inner");
+        assertEquals("inner", sub.getDocumentElement().getNodeName());
+        assertNotSame(xml.getDocument(), sub.getDocumentElement().getOwnerDocument());
+        assertEquals("String de teste 2", sub.getElementsByTagName("str").item(1).getTextContent());
+        assertEquals("iso", ((Element) sub.getElementsByTagName("str").item(1)).getAttribute("charset"));
+        assertNull(xml.getSubDocument("nao_existe"));
+    }
+
+    @Test
+    public void testGetSubDocuments() throws Exception {
+        List<Document> subs = xml.getSubDocuments("msg");
+        assertEquals(3, subs.size());
+        assertEquals("Hello world 3", subs.get(2).getDocumentElement().getTextContent());
+        assertEquals(3, (int) xml.getNumOccur("msg"));
+        assertTrue(xml.getSubDocuments("nao_existe").isEmpty());
+    }
+
+    @Test
+    public void testDetachSubDocuments() throws Exception {
+        xml.setIndexed(true);
+        List<Document> subs = xml.detachSubDocuments("msg");
+        assertEquals(3, subs.size());
+        assertEquals("Hello world 1", subs.get(0).getDocumentElement().getTextContent());
+        assertEquals(0, (int) xml.getNumOccur("msg"));
+        assertEquals(3, (int) xml.getNumOccur("cod"));
+
+        // A ocorrência aninhada acompanha a externa
+        XMLUtils xml = new XMLUtils(new StringBuilder("<a><b><b>1</b></b><b>2</b></a>"));
+        subs = xml.detachSubDocuments("b");
+        assertEquals(2, subs.size());
+        assertEquals("<b><b>1</b></b>", xml.docToStr(subs.get(0), false, true));
+    }
+
+    @Test
+    public void testReadFile_Stream() throws Exception {
+        File file = writeTemp("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<teste>\n  <msg>linha 1\nlinha 2</msg>\n  <acento>ação</acento>\n</teste>", "UTF-8");
+        XMLUtils xml = new XMLUtils(file);
+        assertEquals(XMLUtils.LoadMode.STREAM, xml.getLoadMode());
+        assertEquals("linha 1\nlinha 2", xml.getValue("msg"));
+        assertEquals("ação", xml.getValue("acento"));
+    }
+
+    @Test
+    public void testReadFile_Mapped() throws Exception {
+        File file = writeTemp("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+                + "<teste><acento>ação</acento><cod>001</cod><cod>002</cod></teste>", "ISO-8859-1");
+        XMLUtils xml = new XMLUtils(file, XMLUtils.LoadMode.MAPPED);
+        assertEquals("ação", xml.getValue("acento"));
+        assertArrayEquals(new String[]{"001", "002"}, xml.getValues("cod"));
+    }
+
+    @Test
+    public void testCharset_Declared() throws Exception {
+        File file = writeTemp("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n"
+                + "<teste><acento>ação</acento></teste>", "ISO-8859-1");
+        XMLUtils xml = new XMLUtils(file, XMLUtils.LoadMode.MAPPED);
+        assertEquals("ISO-8859-1", xml.getCharset());
+
+        // A gravação mantém a codificação e a declaração do arquivo
+        xml.setValue("acento", "açúcar");
+        xml.save();
+        String content = new String(java.nio.file.Files.readAllBytes(file.toPath()), "ISO-8859-1");
+        assertTrue(content.startsWith("<?xml"));
+        assertTrue(content.contains("encoding=\"ISO-8859-1\""));
+        assertTrue(content.contains("açúcar"));
+        assertEquals("açúcar", new XMLUtils(file).getValue("acento"));
+    }
+
+    @Test
+    public void testCharset_Hint() throws Exception {
+        File file = writeTemp("<teste><acento>ação</acento></teste>", "ISO-8859-1");
+        try {
+            new XMLUtils(file);
+            fail("Sem declaração o arquivo deve ser lido como UTF-8.");
+        } catch (XMLException ex) {
+            // esperado: bytes ISO-8859-1 inválidos em UTF-8
+        }
+        XMLUtils xml = new XMLUtils(file, XMLUtils.ISO_8859_1);
+        assertEquals("ação", xml.getValue("acento"));
+        assertEquals(XMLUtils.ISO_8859_1, xml.getCharset());
+
+        XMLUtils compact = new XMLUtils(file, XMLUtils.LoadMode.STREAM, XMLUtils.Storage.COMPACT, XMLUtils.ISO_8859_1);
+        assertEquals("ação", compact.getValue("acento"));
+
+        // A declaração do XML prevalece sobre a codificação informada
+        File utf8 = writeTemp("<?xml version=\"1.0\" encoding=\"UTF-8\"?><teste><acento>ação</acento></teste>", "UTF-8");
+        assertEquals("ação", new XMLUtils(utf8, XMLUtils.ISO_8859_1).getValue("acento"));
+
+        try {
+            new XMLUtils(file, "nao-existe");
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+    }
+
+    @Test
+    public void testIndexed() throws Exception {
+        xml.setIndexed(true);
+        assertTrue(xml.isIndexed());
+        assertEquals("001", xml.getValue("cod"));
+        assertArrayEquals(new String[]{"001", "002", "003"}, xml.getValues("cod"));
+        assertArrayEquals(new String[]{"iso"}, xml.getAttributeValues("str", 1));
+        assertEquals(Integer.valueOf(1), xml.getNumOccur("inner"));
+        assertEquals(Integer.valueOf(0), xml.getNumOccur("teste"));
+
+        xml.createTag("inner", "cod", "004");
+        xml.createTag("teste", "cod", "005");
+        assertArrayEquals(new String[]{"001", "002", "003", "004", "005"}, xml.getValues("cod"));
+
+        xml.setValue("inner", "texto");
+        assertEquals(Integer.valueOf(0), xml.getNumOccur("str"));
+        assertArrayEquals(new String[]{"001", "002", "003", "005"}, xml.getValues("cod"));
+
+        xml.removeTag("cod");
+        xml.setValues("cod", "999", 1);
+        xml.setCDATA("msg", "<cdata>");
+        assertArrayEquals(new String[]{"002", "999", "005"}, xml.getValues("cod"));
+        assertEquals("<cdata>", xml.getValue("msg"));
+        assertNull(xml.getValue("inexistente"));
+
+        // O resultado deve ser o mesmo de uma busca direta no DOM.
+        xml.setIndexed(false);
+        assertArrayEquals(new String[]{"002", "999", "005"}, xml.getValues("cod"));
+    }
+
+    @Test
+    public void testIndexed_Wildcard() throws Exception {
+        XMLUtils xml = new XMLUtils(new StringBuilder("<r><a>1</a><b>2</b></r>"));
+        for (boolean indexed : new boolean[]{false, true}) {
+            xml.setIndexed(indexed);
+            assertEquals(Integer.valueOf(2), xml.getNumOccur("*"));
+            assertArrayEquals(new String[]{"12", "1", "2"}, xml.getValues("*"));
+            assertEquals("12", xml.getValue("*"));
+        }
+    }
+
+    @Test
+    public void testAutoLoad_Metadata() throws Exception {
+        File file = writeTemp("<teste><cod>001</cod></teste>", "UTF-8");
+        XMLUtils xml = new XMLUtils(file);
+        xml.setAutoLoad(true);
+        Document loaded = xml.getDocument();
+        assertEquals("001", xml.getValue("cod"));
+        assertSame(loaded, xml.getDocument());
+
+        rewrite(file, "<teste><cod>002</cod><cod>003</cod></teste>");
+        assertEquals("002", xml.getValue("cod"));
+        assertNotSame(loaded, xml.getDocument());
+    }
+
+    @Test
+    public void testAutoLoad_Checksum() throws Exception {
+        File file = writeTemp("<teste><cod>001</cod></teste>", "UTF-8");
+        XMLUtils xml = new XMLUtils(file);
+        xml.setAutoLoad(true);
+        xml.setAutoLoadPolicy(XMLUtils.ReloadPolicy.CHECKSUM);
+        assertEquals("001", xml.getValue("cod"));
+        Document loaded = xml.getDocument();
+        assertEquals("001", xml.getValue("cod"));
+        assertSame(loaded, xml.getDocument());
+
+        // Mesmo tamanho e mesma data de modificação
+        long modified = file.lastModified();
+        rewrite(file, "<teste><cod>009</cod></teste>");
+        file.setLastModified(modified);
+        assertEquals("009", xml.getValue("cod"));
+    }
+
+    @Test
+    public void testAutoLoad_Watch() throws Exception {
+        File file = writeTemp("<teste><cod>001</cod></teste>", "UTF-8");
+        try (XMLUtils xml = new XMLUtils(file)) {
+            xml.setAutoLoadPolicy(XMLUtils.ReloadPolicy.WATCH);
+            xml.setAutoLoad(true);
+            assertEquals("001", xml.getValue("cod"));
+
+            rewrite(file, "<teste><cod>002</cod></teste>");
+            long limit = System.currentTimeMillis() + 30000;
+            while (!"002".equals(xml.getValue("cod")) && System.currentTimeMillis() < limit) {
+                Thread.sleep(50);
+            }
+            assertEquals("002", xml.getValue("cod"));
+        }
+    }
+
+    @Test
+    public void testAutoFlush_Count() throws Exception {
+        File file = writeTemp("<teste><cod>001</cod><msg>a</msg></teste>", "UTF-8");
+        XMLUtils xml = new XMLUtils(file);
+        xml.setAutoFlush(3, 0);
+        xml.setValue("cod", "002");
+        xml.setValue("msg", "b");
+        assertTrue(xml.hasPendingChanges());
+        assertEquals("001", new XMLUtils(file).getValue("cod"));
+
+        xml.createTag("extra");
+        assertFalse(xml.hasPendingChanges());
+        XMLUtils saved = new XMLUtils(file);
+        assertEquals("002", saved.getValue("cod"));
+        assertEquals("b", saved.getValue("msg"));
+        assertEquals(Integer.valueOf(1), saved.getNumOccur("extra"));
+
+        xml.setValue("cod", "003");
+        xml.flush();
+        assertEquals("003", new XMLUtils(file).getValue("cod"));
+    }
+
+    @Test
+    public void testAutoFlush_Delay() throws Exception {
+        File file = writeTemp("<teste><cod>001</cod></teste>", "UTF-8");
+        XMLUtils xml = new XMLUtils(file);
+        // A gravação em segundo plano exige o modo concorrente
+        try {
+            xml.setAutoFlush(0, 50);
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+        xml.setConcurrent(true);
+        xml.setAutoFlush(0, 50);
+        xml.setValue("cod", "002");
+        long limit = System.currentTimeMillis() + 10000;
+        while (xml.hasPendingChanges() && System.currentTimeMillis() < limit) {
+            Thread.sleep(10);
+        }
+        assertFalse(xml.hasPendingChanges());
+        assertEquals("002", new XMLUtils(file).getValue("cod"));
+        try {
+            xml.setConcurrent(false);
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+    }
+
+    @Test
+    public void testAutoFlush_Reconfigure() throws Exception {
+        File file = writeTemp("<teste><cod>001</cod></teste>", "UTF-8");
+        XMLUtils xml = new XMLUtils(file);
+        xml.setConcurrent(true);
+        xml.setAutoFlush(0, 60000);
+        xml.setValue("cod", "002");
+        assertTrue(xml.hasPendingChanges());
+        // As alterações pendentes são gravadas na troca de configuração
+        xml.setAutoFlush(0, 300);
+        assertFalse(xml.hasPendingChanges());
+        assertEquals("002", new XMLUtils(file).getValue("cod"));
+
+        xml.setValue("cod", "003");
+        xml.setAutoFlush(false);
+        assertFalse(xml.hasPendingChanges());
+        assertEquals("003", new XMLUtils(file).getValue("cod"));
+    }
+
+    @Test
+    public void testSave_KeepsDocument() throws Exception {
+        File file = writeTemp("<teste><cod>001</cod></teste>", "UTF-8");
+        XMLUtils xml = new XMLUtils(file);
+        xml.setAutoLoad(true);
+        xml.setVerifyOnSave(true);
+        Document loaded = xml.getDocument();
+        xml.setValue("cod", "002");
+        xml.save();
+        assertSame(loaded, xml.getDocument());
+        // A auto-leitura não deve ler novamente o arquivo recém gravado
+        assertEquals("002", xml.getValue("cod"));
+        assertSame(loaded, xml.getDocument());
+        assertEquals("002", new XMLUtils(file).getValue("cod"));
+    }
+
+    @Test
+    public void testSave_Atomic() throws Exception {
+        File file = writeTemp("<teste><cod>001</cod><msg>ação</msg></teste>", "UTF-8");
+        XMLUtils xml = new XMLUtils(file);
+        xml.setAtomicSave(true, XMLUtils.FsyncPolicy.FILE_AND_DIRECTORY);
+        xml.setVerifyOnSave(true);
+        xml.setValue("cod", "002");
+        xml.save();
+
+        XMLUtils saved = new XMLUtils(file);
+        assertEquals("002", saved.getValue("cod"));
+        assertEquals("ação", saved.getValue("msg"));
+        assertEquals(xml.toString(), saved.toString());
+        // Nenhum arquivo temporário deve sobrar no diretório
+        File[] temps = file.getParentFile().listFiles((dir, name) -> name.startsWith("." + file.getName()));
+        assertEquals(0, temps.length);
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final XMLUtils xml = new XMLUtils(invoices(200));
+        xml.setConcurrent(true);
+        assertTrue(xml.isConcurrent());
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 300; i++) {
+                        assertEquals("Empresa 0", xml.getValue("emitente"));
+                        String[] values = xml.getValues("valor");
+                        assertTrue(values.length >= 200);
+                        assertEquals(3, xml.getMapChilds("nota").size());
+                    }
+                } catch (Throwable ex) {
+                    error.compareAndSet(null, ex);
+                }
+            });
+            readers[t].start();
+        }
+        for (int i = 0; i < 100; i++) {
+            xml.createTag("lote", "valor", String.valueOf(i));
+            xml.setValue("valor", "1.00");
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertEquals(300, (int) xml.getNumOccur("valor"));
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        File file = writeTemp("<?xml version=\"1.0\"?>\n" + invoices(50).toString().replace("<lote>", "<lote versao=\"2\" id=\"x\">"), "UTF-8");
+        XMLUtils dom = new XMLUtils(file);
+        for (XMLUtils.Storage storage : new XMLUtils.Storage[]{XMLUtils.Storage.COMPACT, XMLUtils.Storage.COMPACT_DIRECT}) {
+            XMLUtils compact = new XMLUtils(file, XMLUtils.LoadMode.STREAM, storage);
+            assertEquals(storage, compact.getStorage());
+            assertEquals(dom.getValue("emitente"), compact.getValue("emitente"));
+            assertEquals(dom.getValue("lote"), compact.getValue("lote"));
+            assertNull(compact.getValue("inexistente"));
+            assertArrayEquals(dom.getValues("valor"), compact.getValues("valor"));
+            assertArrayEquals(dom.getAttributes("lote"), compact.getAttributes("lote"));
+            assertArrayEquals(dom.getAttributeValues("lote"), compact.getAttributeValues("lote"));
+            assertArrayEquals(dom.getAttributeValues("nota", 7), compact.getAttributeValues("nota", 7));
+            assertEquals(dom.getMapChilds("nota"), compact.getMapChilds("nota"));
+            assertEquals(dom.getMapAttributes("lote"), compact.getMapAttributes("lote"));
+            assertEquals(dom.getNumOccur("nota"), compact.getNumOccur("nota"));
+            assertEquals(0, (int) compact.getNumOccur("lote"));
+            ExtractionPlan plan = new ExtractionPlan("nota/@numero", "cnpj", "/lote/nota/valor");
+            assertEquals(dom.extractFirst(plan), compact.extractFirst(plan));
+            assertArrayEquals(dom.extractAll(plan).get("cnpj"), compact.extractAll(plan).get("cnpj"));
+            assertEquals(dom.toString(), compact.toString());
+            try {
+                compact.getAttributes("inexistente");
+                fail("Tag inexistente deveria lançar Exception");
+            } catch (Exception ex) {
+                assertTrue(ex.getMessage().contains("inexistente"));
+            }
+            try {
+                compact.setValue("cnpj", "0");
+                fail("Modo compacto deveria ser somente leitura");
+            } catch (XMLException ex) {
+                assertEquals(dom.getValue("cnpj"), compact.getValue("cnpj"));
+            }
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        File file = writeTemp(invoices(20).toString(), "UTF-8");
+        XMLStats stats = new XMLStats();
+        XMLUtils.setDefaultMetrics(stats);
+        XMLUtils xml;
+        try {
+            xml = new XMLUtils(file);
+        } finally {
+            XMLUtils.setDefaultMetrics(null);
+        }
+        assertSame(XMLMetrics.NONE, new XMLUtils(file).getMetrics());
+        assertSame(stats, xml.getMetrics());
+        assertEquals(1, stats.getParse().getCount());
+        assertEquals(file.length(), stats.getBytesRead());
+
+        xml.getValue("cnpj");
+        xml.getValues("valor");
+        xml.getNumOccur("nota");
+        xml.setValue("cnpj", "1");
+        xml.docToStr(xml.getDocument());
+        xml.save();
+        assertEquals(3, stats.getQuery().getCount());
+        assertEquals(1, stats.getMutate().getCount());
+        assertEquals(1, stats.getWrite().getCount());
+        assertEquals(2, stats.getSerialize().getCount());
+        assertEquals(file.length(), stats.getBytesWritten());
+
+        xml.setAutoFlush(true);
+        xml.setValue("cnpj", "2");
+        assertEquals(1, stats.getFlushes());
+
+        xml.setAutoLoad(true);
+        rewrite(file, invoices(5).toString());
+        assertEquals(5, (int) xml.getNumOccur("nota"));
+        assertEquals(1, stats.getReloads());
+        assertEquals(2, stats.getParse().getCount());
+
+        xml.setMetrics(null);
+        xml.getValue("cnpj");
+        assertEquals(4, stats.getQuery().getCount());
+    }
+
+    @Test
+    public void testGetMapChilds_Order() throws Exception {
+        XMLUtils xml = new XMLUtils(new StringBuilder("<a><z>1</z><!-- c --><y>2</y><![CDATA[t]]><x b=\"2\" a=\"1\">3</x></a>"));
+        HashMap<String, String> map = xml.getMapChilds("a");
+        assertArrayEquals(new String[]{"z", "y", "x"}, map.keySet().toArray());
+        assertEquals("3", map.get("x"));
+        assertArrayEquals(new String[]{"a", "b"}, xml.getMapAttributes("x").keySet().toArray());
+        assertEquals("2", xml.getMapAttributes("x", 0).get("b"));
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        xml.forEachValue("cod", value -> sb.append(value).append(';'));
+        assertEquals("001;002;003;", sb.toString());
+
+        sb.setLength(0);
+        xml.forEachChild("inner", (name, value) -> sb.append(name).append('=').append(value).append(';'));
+        assertEquals("str=String de teste 1;str=String de teste 2;", sb.toString());
+
+        sb.setLength(0);
+        xml.forEachAttribute("str", 1, (name, value) -> sb.append(name).append('=').append(value));
+        assertEquals("charset=iso", sb.toString());
+
+        try {
+            xml.forEachChild("inexistente", (name, value) -> fail());
+            fail("Tag inexistente deveria lançar Exception");
+        } catch (Exception ex) {
+            assertTrue(ex.getMessage().contains("inexistente"));
+        }
+        try {
+            xml.forEachAttribute("str", 5, (name, value) -> fail());
+            fail("Ocorrência inexistente deveria lançar Exception");
+        } catch (Exception ex) {
+            assertTrue(ex.getMessage().contains("str"));
+        }
+    }
+
+    static StringBuilder invoices(int notas) {
+        StringBuilder sb = new StringBuilder("<lote>\n");
+        for (int i = 0; i < notas; i++) {
+            sb.append("  <nota numero=\"").append(i).append("\">\n")
+                    .append("    <emitente>Empresa ").append(i % 97).append("</emitente>\n")
+                    .append("    <cnpj>").append(10000000000000L + i).append("</cnpj>\n")
+                    .append("    <valor>").append(i).append(".00</valor>\n")
+                    .append("  </nota>\n");
+        }
+        return sb.append("</lote>");
+    }
+
+    static void rewrite(File file, String content) throws Exception {
+        long modified = file.lastModified();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(content);
+        }
+        // Garante uma nova data de modificação mesmo em sistemas de arquivos
+        // com baixa resolução.
+        file.setLastModified(Math.max(file.lastModified(), modified + 2000));
+    }
+
+    static File writeTemp(String content, String charset) throws Exception {
+        File file = File.createTempFile("xmlutils", ".xml");
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), charset)) {
+            writer.write(content);
+        }
+        return file;
+    }
+
 }
@@ -0,0 +1,90 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XMLWriterTest {
+
+    @Test
+    public void testWrite() throws Exception {
+        File file = File.createTempFile("xmlutils", ".xml");
+        file.deleteOnExit();
+        try (XMLWriter w = XMLUtils.newWriter(file, XMLUtils.ISO_8859_1)) {
+            w.start("lote");
+            for (int i = 0; i < 3; i++) {
+                w.start("nota").attribute("numero", String.valueOf(i))
+                        .element("emitente", "Empresa & Filhos <" + i + ">")
+                        .start("obs").cdata("ação ]]> fim").end()
+                        .end();
+            }
+            assertEquals(1, w.getDepth());
+            // A tag raíz é fechada pelo close()
+        }
+        XMLUtils xml = new XMLUtils(file);
+        assertEquals(XMLUtils.ISO_8859_1, xml.getCharset());
+        assertEquals(3, (int) xml.getNumOccur("nota"));
+        assertEquals("Empresa & Filhos <2>", xml.getValues("emitente")[2]);
+        assertEquals("ação ]]> fim", xml.getValue("obs"));
+        assertEquals("1", xml.getMapAttributes("nota", 1).get("numero"));
+    }
+
+    @Test
+    public void testNode() throws Exception {
+        XMLUtils source = new XMLUtils(new StringBuilder(
+                "<nota numero=\"7\">\n  <item codigo=\"1\">um</item>\n  <!--obs-->\n  <item><![CDATA[<dois>]]></item>\n</nota>"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XMLWriter w = new XMLWriter(out, null)) {
+            w.setIndent(true);
+            w.start("lote").node(source.getDocument()).element("fim", null);
+        }
+        String result = out.toString("UTF-8");
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<lote>\n"
+                + "  <nota numero=\"7\">\n"
+                + "    <item codigo=\"1\">um</item>\n"
+                + "    <!--obs-->\n"
+                + "    <item><![CDATA[<dois>]]></item>\n"
+                + "  </nota>\n"
+                + "  <fim></fim>\n"
+                + "</lote>", result);
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        try (XMLWriter w = new XMLWriter(new ByteArrayOutputStream(), null)) {
+            try {
+                w.end();
+                fail();
+            } catch (XMLException ex) {
+                // esperado
+            }
+        }
+        final boolean[] closed = {false};
+        try {
+            new XMLWriter(new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    closed[0] = true;
+                }
+            }, "nao-existe");
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+        assertTrue(closed[0]);
+
+        // O arquivo existente não é apagado se a codificação for inválida
+        File file = XMLUtilsTest.writeTemp("<a/>", XMLUtils.UTF_8);
+        try {
+            new XMLWriter(file, "nao-existe");
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+        assertEquals(4, file.length());
+    }
+
+}
@@ -0,0 +1,55 @@
+package br.com.paulork.xmlutils;
+
+import br.com.paulork.exceptions.XMLException;
+import javax.xml.xpath.XPathExpression;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XPathQueryTest {
+
+    @After
+    public void tearDown() {
+        XPathQuery.setCacheSize(XPathQuery.DEFAULT_CACHE_SIZE);
+        XPathQuery.clearCache();
+    }
+
+    @Test
+    public void testCompile_Cache() {
+        XPathQuery query = XPathQuery.compile("/a/b");
+        assertSame(query, XPathQuery.compile("/a/b"));
+        assertSame(query.expression(), query.expression());
+        assertEquals("/a/b", query.getExpression());
+    }
+
+    @Test
+    public void testCompile_Invalid() {
+        try {
+            XPathQuery.compile("/a/[");
+            fail("Expressão inválida deveria lançar XMLException");
+        } catch (XMLException ex) {
+            assertTrue(ex.getMessage().contains("/a/["));
+        }
+    }
+
+    @Test
+    public void testCacheSize() {
+        XPathQuery.setCacheSize(2);
+        XPathQuery first = XPathQuery.compile("/a");
+        XPathQuery.compile("/b");
+        XPathQuery.compile("/c");
+        assertNotSame(first, XPathQuery.compile("/a"));
+    }
+
+    @Test
+    public void testExpression_OtherThread() throws Exception {
+        final XPathQuery query = XPathQuery.compile("//b");
+        final XPathExpression[] other = new XPathExpression[1];
+        Thread thread = new Thread(() -> other[0] = query.expression());
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(query.expression(), other[0]);
+    }
+
+}
@@ -0,0 +1,179 @@
+package br.com.paulork.xmlutils.bind;
+
+import br.com.paulork.exceptions.XMLException;
+import br.com.paulork.xmlutils.XMLUtils;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class XMLBinderTest {
+
+    enum Situacao {
+        ABERTA, FECHADA
+    }
+
+    static class Item {
+
+        @XMLAttribute
+        int codigo;
+        @XMLTag
+        String descricao;
+        @XMLTag
+        double quantidade;
+        @XMLTag
+        BigDecimal valor;
+    }
+
+    static class Documento {
+
+        @XMLTag
+        String emitente;
+    }
+
+    static class Nota extends Documento {
+
+        @XMLAttribute
+        private int numero;
+        @XMLAttribute("serie")
+        private Integer serieNota;
+        @XMLTag("cnpj")
+        private long documento;
+        @XMLTag
+        private boolean cancelada;
+        @XMLTag
+        private Situacao situacao;
+        @XMLTag
+        private Item item;
+
+        private Nota() {
+        }
+    }
+
+    static class SemCampos {
+
+        String nome;
+    }
+
+    private static XMLUtils xml() throws Exception {
+        return new XMLUtils(new StringBuilder("<lote>"
+                + "<nota numero=\"1\" serie=\"2\">"
+                + "  <emitente>Empresa A</emitente>"
+                + "  <cnpj> 12345678000199 </cnpj>"
+                + "  <cancelada>true</cancelada>"
+                + "  <situacao>FECHADA</situacao>"
+                + "  <item codigo=\"7\"><descricao>Produto</descricao><quantidade>2.5</quantidade><valor>10.90</valor></item>"
+                + "  <item codigo=\"8\"><descricao>Outro</descricao></item>"
+                + "</nota>"
+                + "<nota numero=\"2\"><emitente>Empresa B</emitente><cnpj></cnpj></nota>"
+                + "</lote>"));
+    }
+
+    @Test
+    public void testBindAll() throws Exception {
+        List<Nota> notas = XMLBinder.of(Nota.class).bindAll(xml(), "nota");
+        assertEquals(2, notas.size());
+
+        Nota nota = notas.get(0);
+        assertEquals(1, nota.numero);
+        assertEquals(Integer.valueOf(2), nota.serieNota);
+        assertEquals("Empresa A", nota.emitente);
+        assertEquals(12345678000199L, nota.documento);
+        assertTrue(nota.cancelada);
+        assertEquals(Situacao.FECHADA, nota.situacao);
+        // Vale a primeira ocorrência da tag
+        assertEquals(7, nota.item.codigo);
+        assertEquals("Produto", nota.item.descricao);
+        assertEquals(2.5, nota.item.quantidade, 0);
+        assertEquals(new BigDecimal("10.90"), nota.item.valor);
+
+        // Tags vazias ou ausentes mantêm o valor padrão
+        nota = notas.get(1);
+        assertEquals(2, nota.numero);
+        assertNull(nota.serieNota);
+        assertEquals(0L, nota.documento);
+        assertNull(nota.item);
+
+        assertTrue(XMLBinder.of(Nota.class).bindAll(xml(), "inexistente").isEmpty());
+        assertSame(XMLBinder.of(Nota.class), XMLBinder.of(Nota.class));
+    }
+
+    @Test
+    public void testBind() throws Exception {
+        XMLUtils xml = xml();
+        Item item = XMLBinder.of(Item.class).bind(xml, "item", 1);
+        assertEquals(8, item.codigo);
+        assertEquals("Outro", item.descricao);
+        assertNull(item.valor);
+        try {
+            XMLBinder.of(Item.class).bind(xml, "item", 2);
+            fail();
+        } catch (XMLException ex) {
+            assertTrue(ex.getMessage().contains("não possui a ocorrência 2"));
+        }
+    }
+
+    @Test
+    public void testBind_ReadError() throws Exception {
+        File file = File.createTempFile("xmlutils", ".xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), xml().toString().getBytes(StandardCharsets.UTF_8));
+        XMLUtils xml = new XMLUtils(file);
+        xml.setAutoLoad(true);
+        // Erro na auto-leitura não é confundido com ocorrência inexistente
+        Files.write(file.toPath(), "<lote><nota>".getBytes(StandardCharsets.UTF_8));
+        try {
+            XMLBinder.of(Nota.class).bind(xml, "nota", 0);
+            fail();
+        } catch (XMLException ex) {
+            assertFalse(ex.getMessage().contains("não possui"));
+        }
+    }
+
+    @Test
+    public void testStorage() throws Exception {
+        File file = File.createTempFile("xmlutils", ".xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), xml().toString().getBytes(StandardCharsets.UTF_8));
+
+        XMLUtils indexed = new XMLUtils(file);
+        indexed.setIndexed(true);
+        indexed.setConcurrent(true);
+        XMLUtils compact = new XMLUtils(file, XMLUtils.LoadMode.STREAM, XMLUtils.Storage.COMPACT);
+        for (XMLUtils xml : new XMLUtils[]{indexed, compact}) {
+            List<Nota> notas = XMLBinder.of(Nota.class).bindAll(xml, "nota");
+            assertEquals(2, notas.size());
+            assertEquals("Empresa A", notas.get(0).emitente);
+            assertEquals(7, notas.get(0).item.codigo);
+            assertEquals(8, XMLBinder.of(Item.class).bind(xml, "item", 1).codigo);
+            assertEquals("Empresa B", notas.get(1).emitente);
+            try {
+                XMLBinder.of(Item.class).bind(xml, "item", 2);
+                fail();
+            } catch (XMLException ex) {
+                // esperado
+            }
+        }
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        try {
+            XMLBinder.of(SemCampos.class);
+            fail();
+        } catch (XMLException ex) {
+            // esperado
+        }
+        XMLUtils xml = new XMLUtils(new StringBuilder("<item codigo=\"x\"/>"));
+        try {
+            XMLBinder.of(Item.class).bind(xml, "item", 0);
+            fail();
+        } catch (XMLException ex) {
+            assertTrue(ex.getMessage().contains("Item.codigo"));
+        }
+    }
+
+}